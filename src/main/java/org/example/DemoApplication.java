@@ -5,10 +5,11 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
 import org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration;
 import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  * Main application class to bootstrap the Spring Boot application.
- * This class is annotated with @SpringBootApplication and @EnableAsync,
+ * This class is annotated with @SpringBootApplication, @EnableAsync and @EnableScheduling,
  * making it the entry point for the application.
  */
 @SpringBootApplication(
@@ -18,6 +19,7 @@ import org.springframework.scheduling.annotation.EnableAsync;
         }
 )
 @EnableAsync // Enable asynchronous processing in the application
+@EnableScheduling // Enable scheduled tasks such as the upload session retention sweep
 public class DemoApplication {
 
     /**
@@ -0,0 +1,36 @@
+package org.example;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Shuts the application down as soon as it has started when app.startup.exit-after-ready is set.
+ * Used for the training run that records the class data sharing (CDS) archive during the Docker build:
+ * the JVM writes the archive on exit, after every class needed for startup has been loaded.
+ */
+@Component // Marks this class as a Spring-managed component, allowing it to be automatically detected
+public class ExitAfterStartup implements ApplicationListener<ApplicationReadyEvent> {
+
+    private final boolean exitAfterReady; // Whether this is a training run
+
+    /**
+     * @param exitAfterReady whether to exit once the application is ready
+     */
+    public ExitAfterStartup(@Value("${app.startup.exit-after-ready:false}") boolean exitAfterReady) {
+        this.exitAfterReady = exitAfterReady;
+    }
+
+    /**
+     * Closes the context, which commits and closes the databases, and exits the JVM.
+     * @param event the event published once the application is ready to serve requests
+     */
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        if (exitAfterReady) {
+            System.exit(SpringApplication.exit(event.getApplicationContext()));
+        }
+    }
+}
@@ -13,19 +13,19 @@ public class Audio {
     public static final int CHUNK_SIZE = 2048;
 
     // Sampling rate for audio (16 kHz)
-    private static final float SAMPLE_RATE = 16000;
+    public static final float SAMPLE_RATE = 16000;
 
     // Size of each audio sample in bits (16-bit samples)
-    private static final int SAMPLE_SIZE_IN_BITS = 16;
+    public static final int SAMPLE_SIZE_IN_BITS = 16;
 
     // Number of audio channels (1 for mono, 2 for stereo)
-    private static final int CHANNELS = 1;
+    public static final int CHANNELS = 1;
 
     // Whether the audio format is signed (true for signed, false for unsigned)
-    private static final boolean SIGNED = true;
+    public static final boolean SIGNED = true;
 
     // Endianness of the audio data (false for little-endian, true for big-endian)
-    private static final boolean BIG_ENDIAN = false;
+    public static final boolean BIG_ENDIAN = false;
 
     // Flag to indicate whether recording is in progress
     private boolean isRecording;
@@ -0,0 +1,103 @@
+package org.example.audio;
+
+/**
+ * Summary of a clip that lets clients show its length and waveform without downloading the audio:
+ * duration, sample count, a downsampled peak envelope and the overall loudness.
+ */
+public class AudioMetadata {
+
+    // Number of points in the peak envelope, enough for an inbox-sized waveform
+    public static final int PEAK_COUNT = 64;
+
+    // Loudness reported for digital silence, the dynamic range of 16-bit samples
+    public static final double SILENCE_DBFS = -96;
+
+    private static final double FULL_SCALE = 32768;
+
+    private final long sampleCount;
+    private final long durationMillis;
+    private final double loudnessDbfs;
+    private final byte[] peaks;
+
+    public AudioMetadata(long sampleCount, long durationMillis, double loudnessDbfs, byte[] peaks) {
+        this.sampleCount = sampleCount;
+        this.durationMillis = durationMillis;
+        this.loudnessDbfs = loudnessDbfs;
+        this.peaks = peaks;
+    }
+
+    /**
+     * Computes the metadata of a PCM clip in one pass over its samples.
+     * @param clip the clip to analyze
+     * @return the clip's metadata
+     */
+    public static AudioMetadata analyze(PcmClip clip) {
+        byte[] pcm = clip.getBytes();
+        int from = clip.getOffset();
+        int sampleCount = clip.getLength() / 2;
+        int peakCount = Math.min(PEAK_COUNT, sampleCount);
+        byte[] peaks = new byte[peakCount];
+
+        long sumOfSquares = 0;
+        int bucket = 0;
+        int bucketPeak = 0;
+        // First sample index of the next bucket; buckets split the clip as evenly as possible
+        long bucketEnd = peakCount == 0 ? Long.MAX_VALUE : (long) sampleCount / peakCount;
+        for (int i = 0; i < sampleCount; i++) {
+            int position = from + i * 2;
+            int sample = (short) ((pcm[position] & 0xff) | (pcm[position + 1] << 8));
+            sumOfSquares += (long) sample * sample;
+            bucketPeak = Math.max(bucketPeak, Math.abs(sample));
+            if (i + 1 == bucketEnd) {
+                peaks[bucket++] = toPeakByte(bucketPeak);
+                bucketPeak = 0;
+                bucketEnd = (long) sampleCount * (bucket + 1) / peakCount;
+            }
+        }
+
+        double loudness = SILENCE_DBFS;
+        if (sumOfSquares > 0) {
+            double rms = Math.sqrt(sumOfSquares / (double) sampleCount);
+            loudness = Math.max(SILENCE_DBFS, 20 * Math.log10(rms / FULL_SCALE));
+        }
+        long durationMillis = sampleCount * 1000L / (long) Audio.SAMPLE_RATE;
+        return new AudioMetadata(sampleCount, durationMillis, loudness, peaks);
+    }
+
+    // Scales an absolute sample value (0..32768) to an unsigned byte (0..255)
+    private static byte toPeakByte(int peak) {
+        return (byte) Math.min(255, (peak * 255 + (int) FULL_SCALE / 2) / (int) FULL_SCALE);
+    }
+
+    public long getSampleCount() {
+        return sampleCount;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    /**
+     * @return the RMS level of the whole clip in dBFS, never below {@link #SILENCE_DBFS}
+     */
+    public double getLoudnessDbfs() {
+        return loudnessDbfs;
+    }
+
+    /**
+     * @return the peak envelope, one unsigned byte (0..255) per segment of the clip; Base64 in JSON
+     */
+    public byte[] getPeaks() {
+        return peaks;
+    }
+
+    @Override
+    public String toString() {
+        return "AudioMetadata{" +
+                "sampleCount=" + sampleCount +
+                ", durationMillis=" + durationMillis +
+                ", loudnessDbfs=" + loudnessDbfs +
+                ", peaks=" + peaks.length +
+                '}';
+    }
+}
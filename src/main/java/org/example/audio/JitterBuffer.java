@@ -0,0 +1,135 @@
+package org.example.audio;
+
+import java.util.Arrays;
+
+/**
+ * Reorders one participant's incoming frames and releases them at a steady pace for mixing.
+ * Frames are decoded into preallocated slots as they arrive, so neither {@link #offer} nor {@link #poll}
+ * allocates. Playout starts once the target depth is buffered; a frame that is missing when its turn comes
+ * is played as silence, and a frame arriving after its turn is dropped.
+ * Network threads offer frames while the mixer polls them, so both methods are synchronized.
+ */
+public class JitterBuffer {
+
+    private final short[][] slots;
+    private final int[] slotSeq;
+    private final int targetDepth;
+
+    // Sequence number of the next frame to play, valid once started
+    private int playoutSeq;
+    private boolean started;
+    private boolean playing;
+    private int buffered;
+
+    /**
+     * @param capacity the number of frames that can be held, which bounds how far ahead a frame may arrive
+     * @param targetDepth the number of frames buffered before playout starts
+     */
+    public JitterBuffer(int capacity, int targetDepth) {
+        if (targetDepth < 1 || targetDepth > capacity) {
+            throw new IllegalArgumentException("Target depth must be between 1 and the capacity");
+        }
+        this.slots = new short[capacity][MixingRoom.FRAME_SAMPLES];
+        this.slotSeq = new int[capacity];
+        this.targetDepth = targetDepth;
+        reset();
+    }
+
+    /**
+     * Decodes a frame of 16-bit little-endian PCM into the buffer.
+     * @param seq the frame's sequence number
+     * @param pcm the encoded frame
+     * @param offset index of the frame's first byte; {@link MixingRoom#FRAME_BYTES} bytes are read
+     * @return false if the frame came too late to be played
+     */
+    public synchronized boolean offer(int seq, byte[] pcm, int offset) {
+        if (started && seq < playoutSeq) {
+            return false;
+        }
+        if (playing && seq >= playoutSeq + slots.length) {
+            // The sender is far ahead of playout, e.g. after a network stall; skip to stay within capacity
+            int skipTo = seq - slots.length + 1;
+            if (skipTo - playoutSeq >= slots.length) {
+                Arrays.fill(slotSeq, Integer.MIN_VALUE);
+                buffered = 0;
+                playoutSeq = skipTo;
+            }
+            for (; playoutSeq < skipTo; playoutSeq++) {
+                clear(playoutSeq);
+            }
+        }
+        int slot = Math.floorMod(seq, slots.length);
+        if (slotSeq[slot] != seq) {
+            if (slotSeq[slot] == Integer.MIN_VALUE) {
+                buffered++;
+            }
+            slotSeq[slot] = seq;
+        }
+        short[] frame = slots[slot];
+        for (int i = 0; i < MixingRoom.FRAME_SAMPLES; i++) {
+            int position = offset + i * 2;
+            frame[i] = (short) ((pcm[position] & 0xff) | (pcm[position + 1] << 8));
+        }
+        if (!playing && buffered >= targetDepth) {
+            playing = true;
+            playoutSeq = started ? Math.max(playoutSeq, lowestBufferedSeq()) : lowestBufferedSeq();
+            started = true;
+        }
+        return true;
+    }
+
+    /**
+     * Takes the frame due for playout.
+     * @param out receives {@link MixingRoom#FRAME_SAMPLES} samples, silence if no frame is due
+     * @return true if a received frame was written, false if silence was written
+     */
+    public synchronized boolean poll(short[] out) {
+        if (!playing) {
+            Arrays.fill(out, 0, MixingRoom.FRAME_SAMPLES, (short) 0);
+            return false;
+        }
+        int slot = Math.floorMod(playoutSeq, slots.length);
+        boolean present = slotSeq[slot] == playoutSeq;
+        if (present) {
+            System.arraycopy(slots[slot], 0, out, 0, MixingRoom.FRAME_SAMPLES);
+        } else {
+            Arrays.fill(out, 0, MixingRoom.FRAME_SAMPLES, (short) 0);
+        }
+        clear(playoutSeq);
+        playoutSeq++;
+        if (buffered == 0) {
+            // Ran dry: build up the target depth again before resuming
+            playing = false;
+        }
+        return present;
+    }
+
+    /**
+     * Forgets all buffered frames, e.g. when a participant leaves and the slot is reused.
+     */
+    public synchronized void reset() {
+        Arrays.fill(slotSeq, Integer.MIN_VALUE);
+        started = false;
+        playing = false;
+        buffered = 0;
+        playoutSeq = 0;
+    }
+
+    private void clear(int seq) {
+        int slot = Math.floorMod(seq, slots.length);
+        if (slotSeq[slot] == seq) {
+            slotSeq[slot] = Integer.MIN_VALUE;
+            buffered--;
+        }
+    }
+
+    private int lowestBufferedSeq() {
+        int lowest = Integer.MAX_VALUE;
+        for (int seq : slotSeq) {
+            if (seq != Integer.MIN_VALUE && seq < lowest) {
+                lowest = seq;
+            }
+        }
+        return lowest;
+    }
+}
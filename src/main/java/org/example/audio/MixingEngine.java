@@ -0,0 +1,71 @@
+package org.example.audio;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives live mixing for all rooms from one mixer thread, ticking every {@link MixingRoom#FRAME_MILLIS}.
+ * Each listener receives a single mixed stream instead of one stream per speaker, so relay bandwidth
+ * grows with the number of participants rather than with its square.
+ */
+public class MixingEngine implements AutoCloseable {
+
+    private final List<MixingRoom> rooms = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "audio-mixer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Creates the engine and starts its mixer thread.
+     */
+    public MixingEngine() {
+        ticker.scheduleAtFixedRate(this::mixAll, MixingRoom.FRAME_MILLIS, MixingRoom.FRAME_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates a room that is mixed on every tick from now on.
+     * @param capacity the maximum number of participants
+     * @param output receives the mixed frames
+     * @return the new room
+     */
+    public MixingRoom createRoom(int capacity, MixingRoom.Output output) {
+        MixingRoom room = new MixingRoom(capacity, output);
+        rooms.add(room);
+        return room;
+    }
+
+    /**
+     * Stops mixing a room.
+     * @param room the room to remove
+     */
+    public void removeRoom(MixingRoom room) {
+        rooms.remove(room);
+    }
+
+    /**
+     * Mixes one tick for every room.
+     */
+    public void mixAll() {
+        for (MixingRoom room : rooms) {
+            try {
+                room.mix();
+            } catch (RuntimeException e) {
+                // A failing output must not stop the ticker for every other room
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Stops the mixer thread.
+     */
+    @Override
+    public void close() {
+        ticker.shutdownNow();
+    }
+}
@@ -0,0 +1,175 @@
+package org.example.audio;
+
+import java.util.Arrays;
+
+/**
+ * Mixes the live voices of one room so every listener hears everyone except themselves,
+ * in the PCM format declared by {@link Audio}.
+ * Instead of summing N-1 streams for each of N listeners, each tick sums all active speakers once and
+ * subtracts the listener's own frame, so a tick costs O(N) frame passes rather than O(N^2).
+ * Listeners who are silent in this tick all hear the same full mix, which is encoded only once.
+ * All buffers are allocated when the room is created, and the inner loops are plain counted loops over
+ * primitive arrays that the JIT can unroll and vectorize.
+ * The room's lock is held only while the frames are mixed and encoded, never while they are delivered,
+ * so a slow output does not hold up network threads offering frames to the room.
+ */
+public class MixingRoom {
+
+    // Length of one mixing tick
+    public static final int FRAME_MILLIS = 20;
+
+    // Samples and encoded bytes in one frame
+    public static final int FRAME_SAMPLES = (int) Audio.SAMPLE_RATE * FRAME_MILLIS / 1000;
+    public static final int FRAME_BYTES = FRAME_SAMPLES * (Audio.SAMPLE_SIZE_IN_BITS / 8);
+
+    // Jitter buffer settings: 160 ms of reordering room, playout starts after 60 ms
+    public static final int JITTER_CAPACITY = 8;
+    public static final int JITTER_TARGET_DEPTH = 3;
+
+    /**
+     * Receives the mixed frame for each listener after every tick.
+     * It is called on the mixer thread without the room's lock held. The mixer thread ticks every room,
+     * so an output that blocks delays the next frame of all of them; it should copy the frame and hand it
+     * to a sender rather than send it itself.
+     */
+    public interface Output {
+        /**
+         * @param participant the listener's slot in the room
+         * @param pcm {@link #FRAME_BYTES} bytes of 16-bit little-endian PCM; the array may be shared between
+         *            listeners and is reused on the next tick, so it must not be modified and must be copied
+         *            before returning
+         */
+        void onMixedFrame(int participant, byte[] pcm);
+    }
+
+    private final JitterBuffer[] jitterBuffers;
+    private final short[][] frames;
+    private final byte[][] encoded;
+    private final boolean[] joined;
+    private final boolean[] speaking;
+    private final int[] sum = new int[FRAME_SAMPLES];
+    private final byte[] fullMix = new byte[FRAME_BYTES];
+    // The frame each slot receives this tick, or null for empty slots; only used by the mixer thread
+    private final byte[][] outgoing;
+    private final Output output;
+
+    /**
+     * @param capacity the maximum number of participants
+     * @param output receives the mixed frames
+     */
+    public MixingRoom(int capacity, Output output) {
+        this.jitterBuffers = new JitterBuffer[capacity];
+        this.frames = new short[capacity][FRAME_SAMPLES];
+        this.encoded = new byte[capacity][FRAME_BYTES];
+        this.joined = new boolean[capacity];
+        this.speaking = new boolean[capacity];
+        this.outgoing = new byte[capacity][];
+        this.output = output;
+        for (int i = 0; i < capacity; i++) {
+            jitterBuffers[i] = new JitterBuffer(JITTER_CAPACITY, JITTER_TARGET_DEPTH);
+        }
+    }
+
+    /**
+     * Adds a participant to the room.
+     * @return the participant's slot, or -1 if the room is full
+     */
+    public synchronized int join() {
+        for (int i = 0; i < joined.length; i++) {
+            if (!joined[i]) {
+                jitterBuffers[i].reset();
+                joined[i] = true;
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Removes a participant and drops their buffered frames; the slot may be handed out again.
+     * @param participant the participant's slot
+     */
+    public synchronized void leave(int participant) {
+        joined[participant] = false;
+        speaking[participant] = false;
+        jitterBuffers[participant].reset();
+    }
+
+    /**
+     * Hands a received frame to the participant's jitter buffer. Safe to call from network threads.
+     * @param participant the sender's slot
+     * @param seq the frame's sequence number
+     * @param pcm the frame as 16-bit little-endian PCM
+     * @param offset index of the frame's first byte
+     * @return false if the frame arrived too late to be mixed, or the slot has no participant
+     */
+    public synchronized boolean offer(int participant, int seq, byte[] pcm, int offset) {
+        // Late packets of someone who left must not end up in the slot's next owner's stream
+        if (participant < 0 || participant >= joined.length || !joined[participant]) {
+            return false;
+        }
+        return jitterBuffers[participant].offer(seq, pcm, offset);
+    }
+
+    /**
+     * Mixes one frame for every participant and passes it to the output.
+     * Must be called once per {@link #FRAME_MILLIS} by a single mixer thread.
+     */
+    public void mix() {
+        mixFrames();
+        // Deliver outside the lock; the buffers are only rewritten by the next tick on this same thread
+        for (int p = 0; p < outgoing.length; p++) {
+            if (outgoing[p] != null) {
+                output.onMixedFrame(p, outgoing[p]);
+            }
+        }
+    }
+
+    // Mixes and encodes this tick's frames and records which one each slot receives
+    private synchronized void mixFrames() {
+        Arrays.fill(sum, 0);
+        for (int p = 0; p < joined.length; p++) {
+            speaking[p] = joined[p] && jitterBuffers[p].poll(frames[p]);
+            if (speaking[p]) {
+                short[] frame = frames[p];
+                for (int i = 0; i < FRAME_SAMPLES; i++) {
+                    sum[i] += frame[i];
+                }
+            }
+        }
+        boolean fullMixEncoded = false;
+        for (int p = 0; p < joined.length; p++) {
+            if (!joined[p]) {
+                outgoing[p] = null;
+                continue;
+            }
+            if (speaking[p]) {
+                encode(sum, frames[p], encoded[p]);
+                outgoing[p] = encoded[p];
+            } else {
+                if (!fullMixEncoded) {
+                    encode(sum, null, fullMix);
+                    fullMixEncoded = true;
+                }
+                outgoing[p] = fullMix;
+            }
+        }
+    }
+
+    // Writes sum - own (or the whole sum when own is null), clipped to 16 bits, as little-endian PCM
+    private static void encode(int[] sum, short[] own, byte[] out) {
+        if (own == null) {
+            for (int i = 0; i < FRAME_SAMPLES; i++) {
+                int sample = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, sum[i]));
+                out[2 * i] = (byte) sample;
+                out[2 * i + 1] = (byte) (sample >> 8);
+            }
+        } else {
+            for (int i = 0; i < FRAME_SAMPLES; i++) {
+                int sample = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, sum[i] - own[i]));
+                out[2 * i] = (byte) sample;
+                out[2 * i + 1] = (byte) (sample >> 8);
+            }
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package org.example.audio;
+
+import java.util.Arrays;
+
+/**
+ * An uploaded clip whose samples are raw PCM in the format declared by {@link Audio}
+ * (16 kHz, 16-bit, signed, little-endian, mono), either as a WAV file or as a bare "audio/L16" body.
+ * "audio/L16" is big-endian (RFC 2586), so its samples are swapped to little-endian on the way in
+ * and back on the way out.
+ * The samples are processed in place inside the original byte array; {@link #toByteArray()}
+ * returns the processed clip in its original container.
+ */
+public class PcmClip {
+
+    // Bytes per second of PCM audio in the canonical format
+    public static final int BYTES_PER_SECOND =
+            (int) Audio.SAMPLE_RATE * (Audio.SAMPLE_SIZE_IN_BITS / 8) * Audio.CHANNELS;
+
+    private static final int WAV_FORMAT_PCM = 1;
+
+    private final byte[] bytes;
+    private final int offset;
+    private final boolean wav;
+    private final boolean bigEndian;
+    private int length;
+
+    private PcmClip(byte[] bytes, int offset, int length, boolean wav, boolean bigEndian) {
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+        this.wav = wav;
+        this.bigEndian = bigEndian;
+    }
+
+    /**
+     * Locates the PCM samples of an uploaded clip.
+     * @param bytes the uploaded file
+     * @param contentType the content type sent with the upload, may be null
+     * @return the clip, or null if the upload is not PCM in the canonical format (e.g. browser WebM/Opus,
+     *         or "audio/L16" with another rate or channel count)
+     */
+    public static PcmClip from(byte[] bytes, String contentType) {
+        if (contentType != null && contentType.toLowerCase().startsWith("audio/l16")) {
+            return fromL16(bytes, contentType);
+        }
+        return fromWav(bytes);
+    }
+
+    // "audio/L16;rate=16000[;channels=1]"; rate is mandatory, channels defaults to 1 (RFC 2586)
+    private static PcmClip fromL16(byte[] bytes, String contentType) {
+        String[] parts = contentType.split(";");
+        if (!parts[0].trim().equalsIgnoreCase("audio/l16")) {
+            return null;
+        }
+        String rate = null;
+        String channels = "1";
+        for (int i = 1; i < parts.length; i++) {
+            int equals = parts[i].indexOf('=');
+            if (equals < 0) {
+                continue;
+            }
+            String name = parts[i].substring(0, equals).trim().toLowerCase();
+            String value = parts[i].substring(equals + 1).trim().replace("\"", "");
+            if (name.equals("rate")) {
+                rate = value;
+            } else if (name.equals("channels")) {
+                channels = value;
+            }
+        }
+        if (!String.valueOf((int) Audio.SAMPLE_RATE).equals(rate) || !String.valueOf(Audio.CHANNELS).equals(channels)) {
+            return null;
+        }
+        int length = bytes.length & ~1;
+        swapBytes(bytes, 0, length);
+        return new PcmClip(bytes, 0, length, false, true);
+    }
+
+    private static PcmClip fromWav(byte[] bytes) {
+        if (bytes.length < 12 || !chunkIdAt(bytes, 0, "RIFF") || !chunkIdAt(bytes, 8, "WAVE")) {
+            return null;
+        }
+        boolean canonicalFormat = false;
+        int position = 12;
+        while (position + 8 <= bytes.length) {
+            int chunkSize = readInt(bytes, position + 4);
+            int body = position + 8;
+            if (chunkIdAt(bytes, position, "fmt ") && body + 16 <= bytes.length) {
+                canonicalFormat = readShort(bytes, body) == WAV_FORMAT_PCM
+                        && readShort(bytes, body + 2) == Audio.CHANNELS
+                        && readInt(bytes, body + 4) == (int) Audio.SAMPLE_RATE
+                        && readShort(bytes, body + 14) == Audio.SAMPLE_SIZE_IN_BITS;
+            } else if (chunkIdAt(bytes, position, "data")) {
+                if (!canonicalFormat) {
+                    return null;
+                }
+                // Recorders that stream WAV often leave the size at 0 or -1, so clamp it to what was uploaded
+                int available = bytes.length - body;
+                int dataLength = chunkSize <= 0 || chunkSize > available ? available : chunkSize;
+                return new PcmClip(bytes, body, dataLength & ~1, true, false);
+            }
+            // A size beyond the end of the upload would overflow the position below
+            if (chunkSize < 0 || chunkSize > bytes.length - body) {
+                return null;
+            }
+            // Chunks are padded to an even size
+            position = body + chunkSize + (chunkSize & 1);
+        }
+        return null;
+    }
+
+    /**
+     * @return the array holding the samples
+     */
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return the index of the first sample byte
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return the number of sample bytes, always even
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Shrinks the clip after its samples were compacted in place.
+     * @param length the new number of sample bytes
+     */
+    public void setLength(int length) {
+        if (length < 0 || length > this.length) {
+            throw new IllegalArgumentException("A clip can only be shortened");
+        }
+        this.length = length;
+    }
+
+    /**
+     * @return the clip's duration in seconds
+     */
+    public double getSeconds() {
+        return toSeconds(length);
+    }
+
+    /**
+     * Converts a number of PCM bytes in the canonical format to seconds.
+     * @param pcmBytes the number of bytes
+     * @return the duration in seconds
+     */
+    public static double toSeconds(int pcmBytes) {
+        return pcmBytes / (double) BYTES_PER_SECOND;
+    }
+
+    /**
+     * Returns the clip in its original container, with the WAV header sizes updated to the current length.
+     * Any chunks that followed the samples are dropped.
+     * @return a new array with the clip
+     */
+    public byte[] toByteArray() {
+        byte[] result = Arrays.copyOf(bytes, offset + length);
+        if (bigEndian) {
+            swapBytes(result, offset, length);
+        }
+        if (wav) {
+            writeInt(result, 4, result.length - 8);
+            writeInt(result, offset - 4, length);
+        }
+        return result;
+    }
+
+    // Converts 16-bit samples between big- and little-endian in place
+    private static void swapBytes(byte[] bytes, int offset, int length) {
+        for (int i = offset; i + 1 < offset + length; i += 2) {
+            byte low = bytes[i];
+            bytes[i] = bytes[i + 1];
+            bytes[i + 1] = low;
+        }
+    }
+
+    private static boolean chunkIdAt(byte[] bytes, int position, String id) {
+        for (int i = 0; i < 4; i++) {
+            if (bytes[position + i] != id.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int readShort(byte[] bytes, int position) {
+        return (bytes[position] & 0xff) | (bytes[position + 1] & 0xff) << 8;
+    }
+
+    private static int readInt(byte[] bytes, int position) {
+        return readShort(bytes, position) | readShort(bytes, position + 2) << 16;
+    }
+
+    private static void writeInt(byte[] bytes, int position, int value) {
+        bytes[position] = (byte) value;
+        bytes[position + 1] = (byte) (value >>> 8);
+        bytes[position + 2] = (byte) (value >>> 16);
+        bytes[position + 3] = (byte) (value >>> 24);
+    }
+}
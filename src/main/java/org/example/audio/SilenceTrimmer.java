@@ -0,0 +1,142 @@
+package org.example.audio;
+
+/**
+ * Energy-based voice-activity detection and silence trimming for PCM in the format declared by {@link Audio}.
+ * The samples are scanned once in fixed 20 ms frames and compacted in place inside the caller's array,
+ * so trimming allocates nothing and the object itself holds only its settings and can be shared between threads.
+ *
+ * A frame is voiced when its mean energy reaches the threshold. Leading and trailing silence is removed,
+ * keeping a short pre-roll before the first voiced frame and a hangover after the last one so word onsets
+ * and decays are not clipped. When gap collapsing is enabled, every pause inside the clip is shortened
+ * to at most the maximum gap: its beginning (including the hangover) and the pre-roll before the next
+ * voiced frame are kept, the middle is dropped.
+ */
+public class SilenceTrimmer {
+
+    // Length of one analysis frame
+    public static final int FRAME_MILLIS = 20;
+
+    // Bytes in one analysis frame
+    public static final int FRAME_BYTES = PcmClip.BYTES_PER_SECOND * FRAME_MILLIS / 1000;
+
+    // Default settings: quiet room noise of a laptop microphone sits well below -45 dBFS
+    public static final double DEFAULT_THRESHOLD_DBFS = -45;
+    public static final int DEFAULT_PRE_ROLL_MILLIS = 100;
+    public static final int DEFAULT_HANGOVER_MILLIS = 200;
+    public static final int DEFAULT_MAX_GAP_MILLIS = 600;
+
+    // Passing this as the maximum gap keeps pauses inside the clip untouched
+    public static final int KEEP_GAPS = -1;
+
+    // Full-scale amplitude of a signed 16-bit sample
+    private static final double FULL_SCALE = 32768;
+
+    private final double thresholdMeanSquare;
+    private final int preRollFrames;
+    private final int hangoverFrames;
+    private final int gapHeadFrames;
+
+    /**
+     * Creates a trimmer with the default settings and gap collapsing enabled.
+     */
+    public SilenceTrimmer() {
+        this(DEFAULT_THRESHOLD_DBFS, DEFAULT_PRE_ROLL_MILLIS, DEFAULT_HANGOVER_MILLIS, DEFAULT_MAX_GAP_MILLIS);
+    }
+
+    /**
+     * @param thresholdDbfs RMS level in dBFS at or above which a frame counts as voiced
+     * @param preRollMillis silence kept before voiced audio
+     * @param hangoverMillis silence kept after voiced audio
+     * @param maxGapMillis longest pause kept inside the clip, or {@link #KEEP_GAPS} to keep pauses as they are;
+     *                     must cover the pre-roll and the hangover
+     */
+    public SilenceTrimmer(double thresholdDbfs, int preRollMillis, int hangoverMillis, int maxGapMillis) {
+        double thresholdAmplitude = FULL_SCALE * Math.pow(10, thresholdDbfs / 20);
+        this.thresholdMeanSquare = thresholdAmplitude * thresholdAmplitude;
+        this.preRollFrames = preRollMillis / FRAME_MILLIS;
+        this.hangoverFrames = hangoverMillis / FRAME_MILLIS;
+        if (preRollFrames < 0 || hangoverFrames < 0) {
+            throw new IllegalArgumentException("Pre-roll and hangover must not be negative");
+        }
+        if (maxGapMillis == KEEP_GAPS) {
+            this.gapHeadFrames = Integer.MAX_VALUE;
+        } else {
+            int maxGapFrames = maxGapMillis / FRAME_MILLIS;
+            if (maxGapFrames < preRollFrames + hangoverFrames) {
+                throw new IllegalArgumentException("Maximum gap must cover the pre-roll and the hangover");
+            }
+            this.gapHeadFrames = maxGapFrames - preRollFrames;
+        }
+    }
+
+    /**
+     * Trims the clip in place and shortens it accordingly.
+     * @param clip the clip to trim
+     * @return the number of bytes removed
+     */
+    public int trim(PcmClip clip) {
+        int trimmedLength = trim(clip.getBytes(), clip.getOffset(), clip.getLength());
+        int removed = clip.getLength() - trimmedLength;
+        clip.setLength(trimmedLength);
+        return removed;
+    }
+
+    /**
+     * Trims the samples in {@code pcm[offset, offset + length)} in place. The kept samples are moved to the front
+     * of that range.
+     * @param pcm 16-bit little-endian mono samples
+     * @param offset index of the first sample byte
+     * @param length number of sample bytes
+     * @return the number of bytes kept, 0 if the clip contains no voiced frame
+     */
+    public int trim(byte[] pcm, int offset, int length) {
+        int end = offset + (length & ~1);
+        int write = offset;
+        // Where the output ends if the clip ends now: after the last voiced frame plus hangover
+        int keepEnd = offset;
+        boolean voiceSeen = false;
+        int silentRun = 0;
+        int droppedRun = 0;
+
+        for (int read = offset; read < end; read += FRAME_BYTES) {
+            int frameLength = Math.min(FRAME_BYTES, end - read);
+            if (isVoiced(pcm, read, frameLength)) {
+                // Bring back the pre-roll from the frames just dropped; they are still intact behind the read position
+                int preRollBytes = Math.min(droppedRun, preRollFrames) * FRAME_BYTES;
+                write = move(pcm, read - preRollBytes, write, preRollBytes + frameLength);
+                keepEnd = write;
+                voiceSeen = true;
+                silentRun = 0;
+                droppedRun = 0;
+            } else {
+                silentRun++;
+                if (voiceSeen && silentRun <= gapHeadFrames) {
+                    write = move(pcm, read, write, frameLength);
+                    if (silentRun <= hangoverFrames) {
+                        keepEnd = write;
+                    }
+                } else {
+                    droppedRun++;
+                }
+            }
+        }
+        return keepEnd - offset;
+    }
+
+    private boolean isVoiced(byte[] pcm, int from, int length) {
+        long sumOfSquares = 0;
+        int to = from + length;
+        for (int i = from; i < to; i += 2) {
+            int sample = (short) ((pcm[i] & 0xff) | (pcm[i + 1] << 8));
+            sumOfSquares += (long) sample * sample;
+        }
+        return sumOfSquares >= thresholdMeanSquare * (length / 2);
+    }
+
+    private static int move(byte[] pcm, int from, int to, int length) {
+        if (from != to) {
+            System.arraycopy(pcm, from, pcm, to, length);
+        }
+        return to + length;
+    }
+}
@@ -1,10 +1,20 @@
 package org.example.database;
 
+import org.example.audio.AudioMetadata;
+import org.example.utility.Utils;
+
+import java.io.ByteArrayOutputStream;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class DataBase {
+    // Shared by request threads and the MessageWriter thread. Methods that touch it are synchronized,
+    // so a batch transaction is never interleaved with other statements on the same connection.
     private Connection connection;
     private final String dbPath;
 
@@ -12,13 +22,13 @@ public class DataBase {
         this.dbPath = dbPath;
     }
 
-    public void openConnection() throws SQLException {
+    public synchronized void openConnection() throws SQLException {
         if (connection == null || connection.isClosed()) {
             connection = DriverManager.getConnection("jdbc:sqlite:" + dbPath);
         }
     }
 
-    public void createUsersTable() throws SQLException {
+    public synchronized void createUsersTable() throws SQLException {
         String sql = """
         CREATE TABLE IF NOT EXISTS users (
             id INTEGER PRIMARY KEY AUTOINCREMENT,
@@ -30,7 +40,7 @@ public class DataBase {
         }
     }
 
-    public void createTable() throws SQLException {
+    public synchronized void createTable() throws SQLException {
         String sql = """
         CREATE TABLE IF NOT EXISTS messages (
             id INTEGER PRIMARY KEY AUTOINCREMENT, 
@@ -38,15 +48,115 @@ public class DataBase {
             from_user TEXT NOT NULL,
             to_user TEXT NOT NULL,
             bytes_data TEXT NOT NULL,
+            payload_hash TEXT,
             FOREIGN KEY (data) REFERENCES users(data) ON DELETE CASCADE
         );
         """;
         try (Statement stmt = connection.createStatement()) {
             stmt.execute(sql);
         }
+        // Databases created before payloads were shared keep their inline bytes_data and gain the new column
+        addColumnIfMissing("messages", "payload_hash", "TEXT");
+        // Serves the claim queries: the next message for a recipient, optionally from one sender, in arrival order
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_messages_to_from ON messages (to_user, from_user, id);");
+        }
+    }
+
+    /**
+     * Creates the table of content-addressed payloads.
+     * Each compressed clip is stored once under its hash, no matter how many messages refer to it;
+     * ref_count is the number of message rows still pointing at it.
+     */
+    public synchronized void createPayloadsTable() throws SQLException {
+        String sql = """
+        CREATE TABLE IF NOT EXISTS payloads (
+            hash TEXT PRIMARY KEY,
+            bytes_data TEXT NOT NULL,
+            ref_count INTEGER NOT NULL
+        );
+        """;
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    /**
+     * Creates the side table of precomputed audio metadata, one compact row per payload.
+     * Inbox views read it instead of the audio blobs; payloads that could not be analyzed have no row.
+     */
+    public synchronized void createPayloadMetadataTable() throws SQLException {
+        String sql = """
+        CREATE TABLE IF NOT EXISTS payload_metadata (
+            hash TEXT PRIMARY KEY,
+            sample_count INTEGER NOT NULL,
+            duration_ms INTEGER NOT NULL,
+            loudness_dbfs REAL NOT NULL,
+            peaks BLOB NOT NULL
+        );
+        """;
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(sql);
+        }
     }
 
-    public void insertNewUser(String data) throws SQLException {
+    /**
+     * Creates the table of chunked upload sessions. next_seq is the sequence number of the next chunk
+     * the session accepts, so a client that lost its connection can ask where to resume.
+     * last_chunk_at tells a live recording apart from an abandoned one; total_bytes bounds the session's size.
+     */
+    public synchronized void createUploadSessionsTable() throws SQLException {
+        String sql = """
+        CREATE TABLE IF NOT EXISTS upload_sessions (
+            id TEXT PRIMARY KEY,
+            owner TEXT NOT NULL,
+            recipients TEXT NOT NULL,
+            content_type TEXT,
+            next_seq INTEGER NOT NULL,
+            created_at INTEGER NOT NULL,
+            last_chunk_at INTEGER NOT NULL DEFAULT 0,
+            total_bytes INTEGER NOT NULL DEFAULT 0
+        );
+        """;
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(sql);
+        }
+        addColumnIfMissing("upload_sessions", "last_chunk_at", "INTEGER NOT NULL DEFAULT 0");
+        addColumnIfMissing("upload_sessions", "total_bytes", "INTEGER NOT NULL DEFAULT 0");
+    }
+
+    /**
+     * Creates the table holding the chunks received so far for each upload session.
+     */
+    public synchronized void createUploadChunksTable() throws SQLException {
+        String sql = """
+        CREATE TABLE IF NOT EXISTS upload_chunks (
+            session_id TEXT NOT NULL,
+            seq INTEGER NOT NULL,
+            bytes BLOB NOT NULL,
+            PRIMARY KEY (session_id, seq)
+        );
+        """;
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    private void addColumnIfMissing(String table, String column, String definition) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + table + ");")) {
+            while (rs.next()) {
+                if (column.equalsIgnoreCase(rs.getString("name"))) {
+                    return;
+                }
+            }
+        }
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition + ";");
+        }
+    }
+
+    public synchronized void insertNewUser(String data) throws SQLException {
         String sql = "INSERT INTO users (data) VALUES (?) ON CONFLICT (data) DO NOTHING;";
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
             pstmt.setString(1, data);
@@ -55,20 +165,82 @@ public class DataBase {
     }
 
     public void insertMessage(String data, String fromUser, String toUser, String bytesData) throws SQLException {
-        String sql = """
-            INSERT INTO messages (data, from_user, to_user, bytes_data)
-            VALUES (?, ?, ?, ?);
+        insertMessages(List.of(new OutgoingMessage(data, fromUser, List.of(toUser), bytesData)));
+    }
+
+    /**
+     * Inserts a batch of messages in a single transaction, so the whole batch costs one commit.
+     * Every payload is written once under its hash and gains one reference per recipient row;
+     * a payload that is already stored only has its reference count raised.
+     * Metadata, when present, is stored alongside the payload the first time it is written.
+     * Either every message is stored or, on failure, none of them are.
+     * @param messages the messages to insert
+     * @throws SQLException if any insert fails; the transaction is rolled back
+     */
+    public synchronized void insertMessages(List<OutgoingMessage> messages) throws SQLException {
+        String payloadSql = """
+            INSERT INTO payloads (hash, bytes_data, ref_count)
+            VALUES (?, ?, ?)
+            ON CONFLICT (hash) DO UPDATE SET ref_count = ref_count + excluded.ref_count;
         """;
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setString(1, data);
-            pstmt.setString(2, fromUser);
-            pstmt.setString(3, toUser);
-            pstmt.setString(4, bytesData);
-            pstmt.executeUpdate();
+        String messageSql = """
+            INSERT INTO messages (data, from_user, to_user, bytes_data, payload_hash)
+            VALUES (?, ?, ?, '', ?);
+        """;
+        String metadataSql = """
+            INSERT INTO payload_metadata (hash, sample_count, duration_ms, loudness_dbfs, peaks)
+            VALUES (?, ?, ?, ?, ?)
+            ON CONFLICT (hash) DO NOTHING;
+        """;
+        // Identical clips within one batch collapse into a single payload write
+        Map<String, OutgoingMessage> payloads = new LinkedHashMap<>();
+        Map<String, Integer> references = new LinkedHashMap<>();
+        for (OutgoingMessage message : messages) {
+            payloads.putIfAbsent(message.getPayloadHash(), message);
+            references.merge(message.getPayloadHash(), message.getToUsers().size(), Integer::sum);
         }
+        inTransaction(() -> {
+            try (PreparedStatement pstmt = connection.prepareStatement(payloadSql)) {
+                for (OutgoingMessage payload : payloads.values()) {
+                    pstmt.setString(1, payload.getPayloadHash());
+                    pstmt.setString(2, payload.getBytesData());
+                    pstmt.setInt(3, references.get(payload.getPayloadHash()));
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            }
+            try (PreparedStatement pstmt = connection.prepareStatement(metadataSql)) {
+                for (OutgoingMessage payload : payloads.values()) {
+                    AudioMetadata metadata = payload.getMetadata();
+                    if (metadata == null) {
+                        continue;
+                    }
+                    pstmt.setString(1, payload.getPayloadHash());
+                    pstmt.setLong(2, metadata.getSampleCount());
+                    pstmt.setLong(3, metadata.getDurationMillis());
+                    pstmt.setDouble(4, metadata.getLoudnessDbfs());
+                    pstmt.setBytes(5, metadata.getPeaks());
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            }
+            try (PreparedStatement pstmt = connection.prepareStatement(messageSql)) {
+                for (OutgoingMessage message : messages) {
+                    for (String toUser : message.getToUsers()) {
+                        pstmt.setString(1, message.getData());
+                        pstmt.setString(2, message.getFromUser());
+                        pstmt.setString(3, toUser);
+                        pstmt.setString(4, message.getPayloadHash());
+                        pstmt.addBatch();
+                    }
+                }
+                pstmt.executeBatch();
+            }
+            return null;
+        });
     }
 
-    public List<String> getUniqueData() throws SQLException {
+    public synchronized List<String> getUniqueData() throws SQLException {
         List<String> uniqueData = new ArrayList<>();
         String sql = "SELECT DISTINCT data FROM users;";
         try (Statement stmt = connection.createStatement();
@@ -80,7 +252,7 @@ public class DataBase {
         return uniqueData;
     }
 
-    public List<String> getToUsersByData(String to_user) throws SQLException {
+    public synchronized List<String> getToUsersByData(String to_user) throws SQLException {
         List<String> toUsers = new ArrayList<>();
         String sql = "SELECT from_user FROM messages WHERE to_user = ?;";
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
@@ -94,9 +266,13 @@ public class DataBase {
         return toUsers;
     }
 
-    public List<Message> getDataByDataAndToUser(String data, String toUser) throws SQLException {
+    public synchronized List<Message> getDataByDataAndToUser(String data, String toUser) throws SQLException {
         List<Message> messages = new ArrayList<>();
-        String sql = "SELECT * FROM messages WHERE data = ? AND to_user = ?;";
+        String sql = """
+            SELECT m.id, m.data, m.from_user, m.to_user, COALESCE(p.bytes_data, m.bytes_data) AS bytes_data
+            FROM messages m LEFT JOIN payloads p ON p.hash = m.payload_hash
+            WHERE m.data = ? AND m.to_user = ?;
+        """;
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
             pstmt.setString(1, data);
             pstmt.setString(2, toUser);
@@ -114,17 +290,35 @@ public class DataBase {
         return messages;
     }
 
-    public String getAudio(String to_user, String from_user) throws SQLException {
-        String sql = "SELECT bytes_data FROM messages WHERE to_user = ? AND from_user = ?;";
+    /**
+     * Lists the messages waiting for a user together with their audio metadata, without reading any payload.
+     * @param toUser the recipient
+     * @return one entry per message in arrival order; the metadata is null when the clip could not be analyzed
+     */
+    public synchronized List<MessageMetadata> getMetadataByToUser(String toUser) throws SQLException {
+        List<MessageMetadata> result = new ArrayList<>();
+        String sql = """
+            SELECT m.id, m.from_user, md.sample_count, md.duration_ms, md.loudness_dbfs, md.peaks
+            FROM messages m LEFT JOIN payload_metadata md ON md.hash = m.payload_hash
+            WHERE m.to_user = ?
+            ORDER BY m.id;
+        """;
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setString(1, to_user);
-            pstmt.setString(2, from_user);
-            ResultSet rs = pstmt.executeQuery();
-            if (rs.next()) {
-                return rs.getString("bytes_data");
+            pstmt.setString(1, toUser);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    byte[] peaks = rs.getBytes("peaks");
+                    AudioMetadata metadata = peaks == null ? null : new AudioMetadata(
+                            rs.getLong("sample_count"),
+                            rs.getLong("duration_ms"),
+                            rs.getDouble("loudness_dbfs"),
+                            peaks
+                    );
+                    result.add(new MessageMetadata(rs.getInt("id"), rs.getString("from_user"), metadata));
+                }
             }
         }
-        return null;
+        return result;
     }
 
     public String clearString(String str) {
@@ -137,17 +331,333 @@ public class DataBase {
         }
     }
 
-    public void deleteMessageById(String data) throws SQLException {
-        String sql = "DELETE FROM messages WHERE ROWID IN ("
-                + "    SELECT ROWID FROM messages WHERE data = ? LIMIT 1"
-                + ");";
+    /**
+     * Claims the oldest message from a sender to a recipient: in one transaction the row is deleted and
+     * returned with its payload, so two readers can never receive the same message and exactly the row that
+     * was read is the one that is gone.
+     * @param toUser the recipient
+     * @param fromUser the sender, must not be null; use {@link #claimMessages} to drain every sender
+     * @return the claimed message, or null if there is none
+     * @throws IllegalArgumentException if the sender is null
+     */
+    public synchronized Message claimNextMessage(String toUser, String fromUser) throws SQLException {
+        if (fromUser == null) {
+            throw new IllegalArgumentException("Sender must not be null");
+        }
+        List<Message> claimed = claimMessages(toUser, fromUser, 1);
+        return claimed.isEmpty() ? null : claimed.get(0);
+    }
+
+    /**
+     * Claims up to {@code limit} of a recipient's oldest messages in one transaction, see {@link #claimNextMessage}.
+     * @param toUser the recipient
+     * @param fromUser the sender, or null to drain messages from every sender
+     * @param limit the maximum number of messages to claim
+     * @return the claimed messages in arrival order; the byte data is the stored (compressed) payload
+     */
+    public synchronized List<Message> claimMessages(String toUser, String fromUser, int limit) throws SQLException {
+        String claimSql = """
+            DELETE FROM messages
+            WHERE id IN (
+                SELECT id FROM messages WHERE to_user = ? %s ORDER BY id LIMIT ?
+            )
+            RETURNING id, data, from_user, to_user, payload_hash, bytes_data;
+        """.formatted(fromUser == null ? "" : "AND from_user = ?");
+        String payloadSql = "SELECT bytes_data FROM payloads WHERE hash = ?;";
+        return inTransaction(() -> {
+            List<Message> claimed = new ArrayList<>();
+            List<String> payloadHashes = new ArrayList<>();
+            try (PreparedStatement pstmt = connection.prepareStatement(claimSql)) {
+                int index = 1;
+                pstmt.setString(index++, toUser);
+                if (fromUser != null) {
+                    pstmt.setString(index++, fromUser);
+                }
+                pstmt.setInt(index, limit);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        payloadHashes.add(rs.getString("payload_hash"));
+                        claimed.add(new Message(
+                                rs.getInt("id"),
+                                rs.getString("data"),
+                                rs.getString("from_user"),
+                                rs.getString("to_user"),
+                                rs.getBytes("bytes_data")
+                        ));
+                    }
+                }
+            }
+            // Resolve shared payloads before releasing them; a clip sent twice to this user is read once
+            Map<String, byte[]> payloads = new HashMap<>();
+            for (int i = 0; i < claimed.size(); i++) {
+                String payloadHash = payloadHashes.get(i);
+                if (payloadHash == null) {
+                    continue;
+                }
+                if (!payloads.containsKey(payloadHash)) {
+                    try (PreparedStatement pstmt = connection.prepareStatement(payloadSql)) {
+                        pstmt.setString(1, payloadHash);
+                        try (ResultSet rs = pstmt.executeQuery()) {
+                            payloads.put(payloadHash, rs.next() ? rs.getBytes("bytes_data") : null);
+                        }
+                    }
+                }
+                Message message = claimed.get(i);
+                claimed.set(i, new Message(message.getId(), message.getData(), message.getFromUser(),
+                        message.getToUser(), payloads.get(payloadHash)));
+            }
+            for (String payloadHash : payloadHashes) {
+                releasePayload(payloadHash);
+            }
+            // RETURNING does not guarantee any order
+            claimed.sort(Comparator.comparingInt(Message::getId));
+            return claimed;
+        });
+    }
+
+    /**
+     * Drops one reference to a payload and deletes the payload and its metadata once no message refers to it.
+     * Must be called inside the transaction that deleted the referring message row.
+     * @param payloadHash the payload hash of the deleted row, or null for legacy rows with inline data
+     */
+    private void releasePayload(String payloadHash) throws SQLException {
+        if (payloadHash == null) {
+            return;
+        }
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "UPDATE payloads SET ref_count = ref_count - 1 WHERE hash = ?;")) {
+            pstmt.setString(1, payloadHash);
+            pstmt.executeUpdate();
+        }
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "DELETE FROM payloads WHERE hash = ? AND ref_count <= 0;")) {
+            pstmt.setString(1, payloadHash);
+            if (pstmt.executeUpdate() == 0) {
+                return;
+            }
+        }
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "DELETE FROM payload_metadata WHERE hash = ?;")) {
+            pstmt.setString(1, payloadHash);
+            pstmt.executeUpdate();
+        }
+    }
+
+    private <T> T inTransaction(SqlWork<T> work) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            T result = work.run();
+            connection.commit();
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    private interface SqlWork<T> {
+        T run() throws SQLException;
+    }
+
+    /**
+     * Opens a chunked upload session.
+     * @param id the new session's id
+     * @param owner the uploader
+     * @param recipients the recipients the finished clip is sent to
+     * @param contentType the content type of the assembled clip, may be null
+     */
+    public synchronized void createUploadSession(String id, String owner, List<String> recipients, String contentType)
+            throws SQLException {
+        String sql = """
+            INSERT INTO upload_sessions (id, owner, recipients, content_type, next_seq, created_at, last_chunk_at)
+            VALUES (?, ?, ?, ?, 0, ?, ?);
+        """;
+        long now = System.currentTimeMillis();
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setString(1, data);
+            pstmt.setString(1, id);
+            pstmt.setString(2, owner);
+            pstmt.setString(3, String.join("\n", recipients));
+            pstmt.setString(4, contentType);
+            pstmt.setLong(5, now);
+            pstmt.setLong(6, now);
             pstmt.executeUpdate();
         }
     }
 
-    public void closeConnection() throws SQLException {
+    /**
+     * @param id the session id
+     * @return the session, or null if there is no such session
+     */
+    public synchronized UploadSession getUploadSession(String id) throws SQLException {
+        String sql = """
+            SELECT id, owner, recipients, content_type, next_seq, MAX(created_at, last_chunk_at) AS last_activity
+            FROM upload_sessions
+            WHERE id = ?;
+        """;
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setString(1, id);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                return new UploadSession(
+                        rs.getString("id"),
+                        rs.getString("owner"),
+                        List.of(rs.getString("recipients").split("\n")),
+                        rs.getString("content_type"),
+                        rs.getInt("next_seq"),
+                        rs.getLong("last_activity")
+                );
+            }
+        }
+    }
+
+    /**
+     * Appends a chunk to an upload session if it is the chunk the session expects next
+     * and the session stays within its size limit.
+     * The chunk is committed before this method returns, so it survives a lost client.
+     * @param id the session id
+     * @param seq the chunk's sequence number
+     * @param bytes the chunk
+     * @param maxSessionBytes the most bytes all chunks of the session may add up to
+     * @return whether the chunk was appended, or why not
+     */
+    public synchronized ChunkResult appendUploadChunk(String id, int seq, byte[] bytes, long maxSessionBytes)
+            throws SQLException {
+        String advanceSql = """
+            UPDATE upload_sessions SET next_seq = next_seq + 1, last_chunk_at = ?, total_bytes = total_bytes + ?
+            WHERE id = ? AND next_seq = ? AND total_bytes + ? <= ?;
+        """;
+        String expectedSql = "SELECT next_seq FROM upload_sessions WHERE id = ?;";
+        String chunkSql = "INSERT INTO upload_chunks (session_id, seq, bytes) VALUES (?, ?, ?);";
+        return inTransaction(() -> {
+            try (PreparedStatement pstmt = connection.prepareStatement(advanceSql)) {
+                pstmt.setLong(1, System.currentTimeMillis());
+                pstmt.setLong(2, bytes.length);
+                pstmt.setString(3, id);
+                pstmt.setInt(4, seq);
+                pstmt.setLong(5, bytes.length);
+                pstmt.setLong(6, maxSessionBytes);
+                if (pstmt.executeUpdate() == 0) {
+                    // The right chunk that does not fit any more, or a missing session or wrong sequence number
+                    try (PreparedStatement expected = connection.prepareStatement(expectedSql)) {
+                        expected.setString(1, id);
+                        try (ResultSet rs = expected.executeQuery()) {
+                            return rs.next() && rs.getInt("next_seq") == seq
+                                    ? ChunkResult.SESSION_FULL
+                                    : ChunkResult.OUT_OF_SEQUENCE;
+                        }
+                    }
+                }
+            }
+            try (PreparedStatement pstmt = connection.prepareStatement(chunkSql)) {
+                pstmt.setString(1, id);
+                pstmt.setInt(2, seq);
+                pstmt.setBytes(3, bytes);
+                pstmt.executeUpdate();
+            }
+            return ChunkResult.APPENDED;
+        });
+    }
+
+    /**
+     * Closes an upload session and hands out its chunks, concatenated in sequence order.
+     * The session is deleted in the same transaction that reads its chunks, so of several concurrent
+     * finalize requests exactly one gets the clip and the others see no session.
+     * @param id the session id
+     * @param owner the uploader; sessions of other users are not touched
+     * @return the closed session with its audio, or null if there is no such session for the owner
+     */
+    public synchronized CompletedUpload claimUploadSession(String id, String owner) throws SQLException {
+        String claimSql = """
+            DELETE FROM upload_sessions
+            WHERE id = ? AND owner = ?
+            RETURNING id, owner, recipients, content_type, next_seq, MAX(created_at, last_chunk_at) AS last_activity;
+        """;
+        String chunksSql = "SELECT bytes FROM upload_chunks WHERE session_id = ? ORDER BY seq;";
+        String deleteChunksSql = "DELETE FROM upload_chunks WHERE session_id = ?;";
+        return inTransaction(() -> {
+            UploadSession session;
+            try (PreparedStatement pstmt = connection.prepareStatement(claimSql)) {
+                pstmt.setString(1, id);
+                pstmt.setString(2, owner);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (!rs.next()) {
+                        return null;
+                    }
+                    session = new UploadSession(
+                            rs.getString("id"),
+                            rs.getString("owner"),
+                            List.of(rs.getString("recipients").split("\n")),
+                            rs.getString("content_type"),
+                            rs.getInt("next_seq"),
+                            rs.getLong("last_activity")
+                    );
+                }
+            }
+            ByteArrayOutputStream assembled = new ByteArrayOutputStream();
+            try (PreparedStatement pstmt = connection.prepareStatement(chunksSql)) {
+                pstmt.setString(1, id);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        assembled.writeBytes(rs.getBytes("bytes"));
+                    }
+                }
+            }
+            try (PreparedStatement pstmt = connection.prepareStatement(deleteChunksSql)) {
+                pstmt.setString(1, id);
+                pstmt.executeUpdate();
+            }
+            return new CompletedUpload(session, assembled.toByteArray());
+        });
+    }
+
+    /**
+     * Deletes an upload session together with its chunks.
+     * @param id the session id
+     */
+    public synchronized void deleteUploadSession(String id) throws SQLException {
+        inTransaction(() -> {
+            try (PreparedStatement pstmt = connection.prepareStatement("DELETE FROM upload_chunks WHERE session_id = ?;")) {
+                pstmt.setString(1, id);
+                pstmt.executeUpdate();
+            }
+            try (PreparedStatement pstmt = connection.prepareStatement("DELETE FROM upload_sessions WHERE id = ?;")) {
+                pstmt.setString(1, id);
+                pstmt.executeUpdate();
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Deletes unfinished upload sessions, and their chunks, that have seen no activity since the cutoff:
+     * neither opened nor sent a chunk. A long recording that is still uploading is never deleted.
+     * @param cutoffMillis epoch milliseconds; sessions whose last activity is older are deleted
+     * @return the number of deleted sessions
+     */
+    public synchronized int deleteUploadSessionsInactiveSince(long cutoffMillis) throws SQLException {
+        String chunksSql = """
+            DELETE FROM upload_chunks
+            WHERE session_id IN (SELECT id FROM upload_sessions WHERE MAX(created_at, last_chunk_at) < ?);
+        """;
+        String sessionsSql = "DELETE FROM upload_sessions WHERE MAX(created_at, last_chunk_at) < ?;";
+        return inTransaction(() -> {
+            try (PreparedStatement pstmt = connection.prepareStatement(chunksSql)) {
+                pstmt.setLong(1, cutoffMillis);
+                pstmt.executeUpdate();
+            }
+            try (PreparedStatement pstmt = connection.prepareStatement(sessionsSql)) {
+                pstmt.setLong(1, cutoffMillis);
+                return pstmt.executeUpdate();
+            }
+        });
+    }
+
+    public synchronized void closeConnection() throws SQLException {
         if (connection != null && !connection.isClosed()) {
             connection.close();
         }
@@ -199,4 +709,161 @@ public class DataBase {
                     '}';
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * A message waiting to be written; unlike {@link Message} it has no id yet.
+     * One outgoing message becomes one row per recipient, all sharing the payload stored under {@link #getPayloadHash()}.
+     */
+    public static class OutgoingMessage {
+        private final String data;
+        private final String fromUser;
+        private final List<String> toUsers;
+        private final String bytesData;
+        private final String payloadHash;
+        private final AudioMetadata metadata;
+
+        public OutgoingMessage(String data, String fromUser, List<String> toUsers, String bytesData) {
+            this(data, fromUser, toUsers, bytesData, null);
+        }
+
+        public OutgoingMessage(String data, String fromUser, List<String> toUsers, String bytesData,
+                               AudioMetadata metadata) {
+            this.data = data;
+            this.fromUser = fromUser;
+            this.toUsers = List.copyOf(toUsers);
+            this.bytesData = bytesData;
+            this.payloadHash = Utils.calculateHash(bytesData);
+            this.metadata = metadata;
+        }
+
+        public String getData() {
+            return data;
+        }
+
+        public String getFromUser() {
+            return fromUser;
+        }
+
+        public List<String> getToUsers() {
+            return toUsers;
+        }
+
+        public String getBytesData() {
+            return bytesData;
+        }
+
+        public String getPayloadHash() {
+            return payloadHash;
+        }
+
+        public AudioMetadata getMetadata() {
+            return metadata;
+        }
+    }
+
+    /**
+     * Outcome of {@link #appendUploadChunk}.
+     */
+    public enum ChunkResult {
+        APPENDED, // The chunk was stored
+        OUT_OF_SEQUENCE, // The session expects another sequence number, or does not exist
+        SESSION_FULL // The chunk would take the session past its size limit
+    }
+
+    /**
+     * A chunked upload in progress.
+     */
+    public static class UploadSession {
+        private final String id;
+        private final String owner;
+        private final List<String> recipients;
+        private final String contentType;
+        private final int nextSeq;
+        private final long lastActivityAt;
+
+        public UploadSession(String id, String owner, List<String> recipients, String contentType, int nextSeq,
+                             long lastActivityAt) {
+            this.id = id;
+            this.owner = owner;
+            this.recipients = recipients;
+            this.contentType = contentType;
+            this.nextSeq = nextSeq;
+            this.lastActivityAt = lastActivityAt;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getOwner() {
+            return owner;
+        }
+
+        public List<String> getRecipients() {
+            return recipients;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public int getNextSeq() {
+            return nextSeq;
+        }
+
+        /**
+         * @return epoch milliseconds of the last stored chunk, or of the session's creation if it has none
+         */
+        public long getLastActivityAt() {
+            return lastActivityAt;
+        }
+    }
+
+    /**
+     * A closed upload session together with the audio assembled from its chunks.
+     */
+    public static class CompletedUpload {
+        private final UploadSession session;
+        private final byte[] audioData;
+
+        public CompletedUpload(UploadSession session, byte[] audioData) {
+            this.session = session;
+            this.audioData = audioData;
+        }
+
+        public UploadSession getSession() {
+            return session;
+        }
+
+        public byte[] getAudioData() {
+            return audioData;
+        }
+    }
+
+    /**
+     * A waiting message as listed in the inbox: who sent it and what the clip looks like, without the audio.
+     */
+    public static class MessageMetadata {
+        private final int id;
+        private final String fromUser;
+        private final AudioMetadata metadata;
+
+        public MessageMetadata(int id, String fromUser, AudioMetadata metadata) {
+            this.id = id;
+            this.fromUser = fromUser;
+            this.metadata = metadata;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public String getFromUser() {
+            return fromUser;
+        }
+
+        public AudioMetadata getMetadata() {
+            return metadata;
+        }
+    }
+}
@@ -1,7 +1,13 @@
 package org.example.database;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Configuration class for setting up the database connection and initialization.
@@ -10,35 +16,87 @@ import org.springframework.context.annotation.Configuration;
 @Configuration
 public class DataBaseConfig {
 
-    // Path to the SQLite database file
+    // Default path to the SQLite database file; with several shards, shard i lives next to it as data-i.db
     private static final String DB_PATH = "src/main/resources/data/data.db";
 
     /**
-     * Creates and initializes a bean for managing the database.
-     * This method is annotated with @Bean, meaning it will be managed by the Spring container.
+     * Creates and initializes the sharded storage, one SQLite file and one write-behind queue per shard.
+     * With a single shard (the default) everything stays in DB_PATH. Changing the shard count moves users
+     * to other shards, so it must only be changed on an empty data directory.
+     * This method is annotated with @Bean, meaning it will be managed by the Spring container;
+     * closing it on shutdown commits whatever is still queued.
+     * The bean is never lazy, so with deferred initialization the schema setup starts while the rest of the
+     * application is still starting; requests that arrive before it has finished wait for it.
      *
-     * @return an instance of the DataBase class, fully initialized and ready to use
+     * @param dbPath the path of the database file
+     * @param shardCount the number of SQLite files the storage is spread over
+     * @param queueCapacity how many uploads may wait per shard before new uploads block
+     * @param batchSize the maximum number of messages committed per transaction
+     * @param maxBatchDelayMillis the latency ceiling a message may wait for its batch to fill up
+     * @param deferredInit whether to open the files and create the tables in the background
+     * @return the storage, initialized or initializing
      */
     @Bean
-    public DataBase dataBase() {
-        // Create a new instance of the DataBase class with the specified database path
-        DataBase databasemanager = new DataBase(DB_PATH);
+    @Lazy(false) // Start the schema setup during startup even when lazy initialization is enabled
+    public DataBaseShards dataBaseShards(@Value("${app.database.path:" + DB_PATH + "}") String dbPath,
+                                         @Value("${app.database.shards:1}") int shardCount,
+                                         @Value("${app.messages.queue-capacity:1024}") int queueCapacity,
+                                         @Value("${app.messages.batch-size:64}") int batchSize,
+                                         @Value("${app.messages.max-batch-delay-ms:5}") long maxBatchDelayMillis,
+                                         @Value("${app.database.deferred-init:false}") boolean deferredInit) {
+        // Create one instance of the DataBase class per shard
+        List<DataBase> dataBases = new ArrayList<>();
+        for (int shard = 0; shard < shardCount; shard++) {
+            dataBases.add(new DataBase(shardPath(dbPath, shard, shardCount)));
+        }
+        DataBaseShards shards = new DataBaseShards(dataBases, queueCapacity, batchSize, maxBatchDelayMillis);
 
         try {
-            // Open a connection to the database
-            databasemanager.openConnection();
-
-            // Create the 'users' table if it does not already exist
-            databasemanager.createUsersTable();
-
-            // Create the 'messages' table if it does not already exist
-            databasemanager.createTable();
+            // Open and create the tables of all shards in parallel, now or in the background
+            shards.initialize(DataBaseConfig::initialize, deferredInit);
         } catch (Exception e) {
             // If any error occurs during initialization, throw a runtime exception
             throw new RuntimeException("Error with opening or creating the database", e);
         }
 
-        // Return the fully initialized DataBase instance
-        return databasemanager;
+        // Return the fully initialized storage
+        return shards;
+    }
+
+    /**
+     * Opens a shard's connection and creates its tables.
+     *
+     * @param databasemanager the shard's database
+     * @return always null; the signature fits DataBaseShards.ShardTask
+     * @throws SQLException if the database cannot be opened or a table cannot be created
+     */
+    static Void initialize(DataBase databasemanager) throws SQLException {
+        // Open a connection to the database
+        databasemanager.openConnection();
+
+        // Create the 'users' table if it does not already exist
+        databasemanager.createUsersTable();
+
+        // Create the 'messages' table if it does not already exist
+        databasemanager.createTable();
+
+        // Create the 'payloads' table holding each distinct clip once
+        databasemanager.createPayloadsTable();
+
+        // Create the 'payload_metadata' side table read by inbox views
+        databasemanager.createPayloadMetadataTable();
+
+        // Create the tables holding chunked uploads until they are finalized
+        databasemanager.createUploadSessionsTable();
+        databasemanager.createUploadChunksTable();
+        return null;
+    }
+
+    private static String shardPath(String dbPath, int shard, int shardCount) {
+        if (shardCount == 1) {
+            return dbPath;
+        }
+        String base = dbPath.endsWith(".db") ? dbPath.substring(0, dbPath.length() - ".db".length()) : dbPath;
+        return base + "-" + shard + ".db";
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,241 @@
+package org.example.database;
+
+import org.example.audio.AudioMetadata;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Spreads the storage over several SQLite files so uploads are not serialized on a single writer lock.
+ * Every user lives on the shard picked by a stable hash of their id: their inbox (messages addressed to them),
+ * the payloads of those messages, their directory entry and the upload sessions they opened.
+ * Each shard has its own connection and its own {@link MessageWriter}, so shards commit independently;
+ * operations that need every shard run on all of them in parallel.
+ * With one shard this is exactly the single-file layout.
+ * The schema can be set up in the background so it stays off the startup path; until it is done,
+ * every access to a shard waits for it.
+ */
+public class DataBaseShards implements AutoCloseable {
+
+    /**
+     * Work run against one shard's database.
+     */
+    public interface ShardTask<T> {
+        T run(DataBase dataBase) throws SQLException;
+    }
+
+    private final List<DataBase> dataBases;
+    private final List<MessageWriter> messageWriters = new ArrayList<>();
+    private final ExecutorService executor;
+
+    // Completes once every shard is opened and its tables exist
+    private volatile CompletableFuture<Void> ready = CompletableFuture.completedFuture(null);
+
+    /**
+     * Creates a writer per shard. The databases must be opened and initialized by the caller,
+     * e.g. through {@link #forEachShard}.
+     * @param dataBases one database per shard, in shard order; the order must not change between runs
+     * @param queueCapacity the queue capacity of each shard's writer
+     * @param batchSize the batch size of each shard's writer
+     * @param maxBatchDelayMillis the maximum batch delay of each shard's writer
+     */
+    public DataBaseShards(List<DataBase> dataBases, int queueCapacity, int batchSize, long maxBatchDelayMillis) {
+        if (dataBases.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        this.dataBases = List.copyOf(dataBases);
+        for (DataBase dataBase : this.dataBases) {
+            messageWriters.add(new MessageWriter(dataBase, queueCapacity, batchSize, maxBatchDelayMillis));
+        }
+        this.executor = Executors.newFixedThreadPool(this.dataBases.size(), runnable -> {
+            Thread thread = new Thread(runnable, "database-shards");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Opens and sets up every shard in parallel.
+     * @param task the setup to run per shard, e.g. opening the connection and creating the tables
+     * @param deferred if true, returns at once and runs the setup on a background thread;
+     *                 accesses to the shards block until it has finished
+     * @throws SQLException the first failure, only when not deferred
+     */
+    public void initialize(ShardTask<?> task, boolean deferred) throws SQLException {
+        if (!deferred) {
+            forEachShard(task);
+            return;
+        }
+        CompletableFuture<Void> initialized = new CompletableFuture<>();
+        ready = initialized;
+        Thread thread = new Thread(() -> {
+            try {
+                forEachShard(task);
+                initialized.complete(null);
+            } catch (Throwable e) {
+                // Print the stack trace; every later access to the shards fails with it
+                e.printStackTrace();
+                initialized.completeExceptionally(e);
+            }
+        }, "database-init");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Blocks until a deferred {@link #initialize} has finished.
+     * @throws IllegalStateException if the setup failed
+     */
+    public void awaitReady() {
+        try {
+            ready.join();
+        } catch (CompletionException e) {
+            throw new IllegalStateException("Database initialization failed", e.getCause());
+        }
+    }
+
+    /**
+     * @return the number of shards
+     */
+    public int size() {
+        return dataBases.size();
+    }
+
+    /**
+     * Picks the shard of a user. String.hashCode is specified by the language, so the mapping is stable
+     * across restarts and JVMs as long as the shard count stays the same.
+     * @param user the user's id, usually a hashed address
+     * @return the shard index
+     */
+    public int shardOf(String user) {
+        return Math.floorMod(user.hashCode(), dataBases.size());
+    }
+
+    /**
+     * @param user the user's id
+     * @return the database holding the user's inbox, directory entry and upload sessions
+     */
+    public DataBase forUser(String user) {
+        awaitReady();
+        return dataBases.get(shardOf(user));
+    }
+
+    /**
+     * Enqueues a message on the shards of its recipients. Each shard stores the payload once for all of its
+     * recipients; the returned future completes once every involved shard has committed.
+     * The fan-out is atomic per shard only: if one shard fails while another commits, the future fails but the
+     * recipients on the committed shard already have the message, and submitting it again duplicates it for them.
+     * @throws IllegalArgumentException if a recipient is null or there are no recipients; without this check
+     *         a message for nobody would involve no shard and report success without storing anything
+     * @see MessageWriter#submit
+     */
+    public CompletableFuture<Void> submit(String data, String fromUser, List<String> toUsers, String bytesData,
+                                          AudioMetadata metadata) throws InterruptedException {
+        if (toUsers == null || toUsers.stream().anyMatch(Objects::isNull)) {
+            throw new IllegalArgumentException("Message fields must not be null");
+        }
+        if (toUsers.isEmpty()) {
+            throw new IllegalArgumentException("Message needs at least one recipient");
+        }
+        awaitReady();
+        Map<Integer, List<String>> recipientsByShard = new LinkedHashMap<>();
+        for (String toUser : toUsers) {
+            recipientsByShard.computeIfAbsent(shardOf(toUser), shard -> new ArrayList<>()).add(toUser);
+        }
+        List<CompletableFuture<Void>> commits = new ArrayList<>();
+        for (Map.Entry<Integer, List<String>> entry : recipientsByShard.entrySet()) {
+            commits.add(messageWriters.get(entry.getKey()).submit(data, fromUser, entry.getValue(), bytesData, metadata));
+        }
+        return CompletableFuture.allOf(commits.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * Runs a task on every shard in parallel and waits for all of them.
+     * @param task the work to run per shard
+     * @return the results in shard order
+     * @throws SQLException the first failure, after every shard has finished
+     */
+    public <T> List<T> forEachShard(ShardTask<T> task) throws SQLException {
+        if (dataBases.size() == 1) {
+            return List.of(task.run(dataBases.get(0)));
+        }
+        List<Future<T>> futures = new ArrayList<>();
+        for (DataBase dataBase : dataBases) {
+            futures.add(executor.submit(() -> task.run(dataBase)));
+        }
+        List<T> results = new ArrayList<>();
+        SQLException failure = null;
+        for (Future<T> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof SQLException sqlException
+                            ? sqlException
+                            : new SQLException("Shard operation failed", e.getCause());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for shards", e);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return results;
+    }
+
+    /**
+     * @return the user directory of all shards
+     */
+    public List<String> getUniqueData() throws SQLException {
+        awaitReady();
+        LinkedHashSet<String> users = new LinkedHashSet<>();
+        for (List<String> shardUsers : forEachShard(DataBase::getUniqueData)) {
+            users.addAll(shardUsers);
+        }
+        return new ArrayList<>(users);
+    }
+
+    /**
+     * Retention sweep: deletes the unfinished upload sessions on every shard that have received
+     * no chunk since the cutoff, see {@link DataBase#deleteUploadSessionsInactiveSince}.
+     * @param cutoffMillis epoch milliseconds; sessions whose last activity is older are deleted
+     * @return the number of deleted sessions
+     */
+    public int deleteUploadSessionsInactiveSince(long cutoffMillis) throws SQLException {
+        awaitReady();
+        int deleted = 0;
+        for (int shardDeleted : forEachShard(dataBase -> dataBase.deleteUploadSessionsInactiveSince(cutoffMillis))) {
+            deleted += shardDeleted;
+        }
+        return deleted;
+    }
+
+    /**
+     * Commits whatever the writers still hold and closes every shard's connection.
+     */
+    @Override
+    public void close() throws SQLException {
+        // Let a deferred setup finish first, so it does not reopen a closed connection
+        ready.exceptionally(e -> null).join();
+        for (MessageWriter messageWriter : messageWriters) {
+            messageWriter.close();
+        }
+        executor.shutdown();
+        for (DataBase dataBase : dataBases) {
+            dataBase.closeConnection();
+        }
+    }
+}
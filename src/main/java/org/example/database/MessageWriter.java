@@ -0,0 +1,183 @@
+package org.example.database;
+
+import org.example.audio.AudioMetadata;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind queue for message inserts.
+ * Uploads are enqueued into a bounded queue and a single writer thread drains it,
+ * writing each batch in one transaction. A batch is closed once it reaches the batch size
+ * or once its first message has waited for the maximum batch delay, whichever comes first.
+ * The future returned by {@link #submit} completes only after the batch has been committed,
+ * and every accepted message's future is completed, also when its batch fails or the writer is closed.
+ */
+public class MessageWriter implements AutoCloseable {
+
+    // How long the writer waits for the first message of a batch before re-checking the running flag
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    private final DataBase dataBase;
+    private final BlockingQueue<PendingMessage> queue;
+    private final int batchSize;
+    private final long maxBatchDelayNanos;
+    private final Thread writerThread;
+
+    private volatile boolean running = true;
+
+    /**
+     * Creates the writer and starts its writer thread.
+     * @param dataBase the database the batches are written to
+     * @param queueCapacity how many messages may wait in the queue before {@link #submit} blocks
+     * @param batchSize the maximum number of messages committed in one transaction
+     * @param maxBatchDelayMillis the longest time a message waits for its batch to fill up
+     */
+    public MessageWriter(DataBase dataBase, int queueCapacity, int batchSize, long maxBatchDelayMillis) {
+        if (queueCapacity < 1 || batchSize < 1 || maxBatchDelayMillis < 0) {
+            throw new IllegalArgumentException("Queue capacity and batch size must be positive, delay must not be negative");
+        }
+        this.dataBase = dataBase;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.maxBatchDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxBatchDelayMillis);
+        this.writerThread = new Thread(this::run, "message-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * Enqueues a message for insertion, one row per recipient sharing a single stored payload.
+     * Blocks while the queue is full.
+     * @param metadata the clip's precomputed metadata, or null if it could not be analyzed
+     * @return a future completed once the batch containing the message is committed,
+     *         or completed exceptionally if the batch failed
+     * @throws InterruptedException if interrupted while waiting for queue space
+     * @throws IllegalArgumentException if any field is null or there are no recipients
+     * @throws IllegalStateException if the writer is closed
+     */
+    public CompletableFuture<Void> submit(String data, String fromUser, List<String> toUsers, String bytesData,
+                                          AudioMetadata metadata) throws InterruptedException {
+        if (!running) {
+            throw new IllegalStateException("Message writer is closed");
+        }
+        // Reject rows that would violate NOT NULL here, so they cannot fail the whole batch they land in
+        if (data == null || fromUser == null || toUsers == null || bytesData == null
+                || toUsers.stream().anyMatch(Objects::isNull)) {
+            throw new IllegalArgumentException("Message fields must not be null");
+        }
+        if (toUsers.isEmpty()) {
+            throw new IllegalArgumentException("Message needs at least one recipient");
+        }
+        PendingMessage pending = new PendingMessage(new DataBase.OutgoingMessage(data, fromUser, toUsers, bytesData, metadata));
+        // Wait for queue space, but give up once the writer thread is gone and nobody will ever take it
+        while (!queue.offer(pending, IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+            if (!writerThread.isAlive()) {
+                throw new IllegalStateException("Message writer is closed");
+            }
+        }
+        if (!writerThread.isAlive()) {
+            // Raced with close(): the writer exited before it could take this message
+            failQueued();
+        }
+        return pending.future;
+    }
+
+    private void run() {
+        List<PendingMessage> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingMessage first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                fillBatch(batch, System.nanoTime() + maxBatchDelayNanos);
+            } catch (InterruptedException e) {
+                // Stop after flushing what was already taken and whatever is still queued
+                running = false;
+            }
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void fillBatch(List<PendingMessage> batch, long deadline) throws InterruptedException {
+        while (batch.size() < batchSize) {
+            // Take everything that is already waiting before sleeping on the queue
+            queue.drainTo(batch, batchSize - batch.size());
+            if (batch.size() >= batchSize) {
+                return;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return;
+            }
+            PendingMessage next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void flush(List<PendingMessage> batch) {
+        List<DataBase.OutgoingMessage> messages = new ArrayList<>(batch.size());
+        for (PendingMessage pending : batch) {
+            messages.add(pending.message);
+        }
+        try {
+            dataBase.insertMessages(messages);
+            for (PendingMessage pending : batch) {
+                pending.future.complete(null);
+            }
+        } catch (Throwable e) {
+            // Fail the batch but keep the writer alive; a dead writer would block every later upload
+            for (PendingMessage pending : batch) {
+                pending.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    // Fails every message still in the queue; only called once the writer thread has exited
+    private void failQueued() {
+        List<PendingMessage> leftovers = new ArrayList<>();
+        queue.drainTo(leftovers);
+        for (PendingMessage pending : leftovers) {
+            pending.future.completeExceptionally(new IllegalStateException("Message writer is closed"));
+        }
+    }
+
+    /**
+     * Stops accepting messages, commits everything still queued and waits for the writer thread to exit.
+     * Messages that slipped into the queue after the writer's last batch are failed.
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        failQueued();
+    }
+
+    private static class PendingMessage {
+        private final DataBase.OutgoingMessage message;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private PendingMessage(DataBase.OutgoingMessage message) {
+            this.message = message;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package org.example.database;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLException;
+
+/**
+ * Periodically deletes upload sessions that were abandoned, e.g. because the browser was closed for good:
+ * sessions that were never finalized and have received no chunk for the retention period.
+ * A recording that is still uploading is kept however long it runs. The sweep runs on all shards in parallel.
+ * This class is annotated with @Component, making it a Spring-managed component.
+ */
+@Component // Marks this class as a Spring-managed component, allowing it to be automatically detected
+@Lazy(false) // A lazy bean is never created, so its sweep would never be scheduled
+public class RetentionSweeper {
+
+    private final DataBaseShards dataBaseShards; // Sharded database service for interacting with the database
+    private final long maxAgeMillis; // How long an unfinished upload session is kept after its last chunk
+
+    /**
+     * Constructor to inject the DataBaseShards dependency and the retention period.
+     * @param dataBaseShards the sharded database service instance
+     * @param maxAgeMillis how long after its last chunk an unfinished upload session may be resumed
+     */
+    public RetentionSweeper(DataBaseShards dataBaseShards,
+                            @Value("${app.upload-sessions.max-age-ms:86400000}") long maxAgeMillis) {
+        this.dataBaseShards = dataBaseShards;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * Deletes every upload session that has been inactive for the retention period, together with its chunks.
+     */
+    @Scheduled(fixedDelayString = "${app.upload-sessions.sweep-interval-ms:600000}")
+    public void sweep() {
+        try {
+            dataBaseShards.deleteUploadSessionsInactiveSince(System.currentTimeMillis() - maxAgeMillis);
+        } catch (SQLException e) {
+            // Print the stack trace; the next sweep tries again
+            e.printStackTrace();
+        }
+    }
+}
@@ -2,17 +2,27 @@ package org.example.server;
 
 import jakarta.servlet.http.HttpServletRequest;
 import org.example.audio.Audio;
+import org.example.audio.AudioMetadata;
+import org.example.audio.PcmClip;
+import org.example.audio.SilenceTrimmer;
 import org.example.database.DataBase;
+import org.example.database.DataBaseShards;
 import org.example.utility.Utils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * REST controller for handling various API endpoints related to user interactions, audio recording, and database operations.
@@ -22,20 +32,34 @@ import java.util.Map;
 @RequestMapping("/") // Maps all endpoints in this controller to the root path ("/")
 public class CertificateController {
 
-    private String clients; // Stores the current client username
+    private List<String> clients = new ArrayList<>(); // Stores the current recipients' usernames
     private String sender; // Stores the sender's email or identifier
     private List<String> blacklist = new ArrayList<>(); // A list of blacklisted users TODO make ban users
 
+    // Most messages a single "/get-audio-batch" request may drain
+    private static final int MAX_BATCH_MESSAGES = 50;
+
+    // Largest chunk accepted by an upload session; the recorder sends one chunk per second
+    private static final int MAX_CHUNK_BYTES = 1024 * 1024;
+
+    // Largest clip an upload session may assemble, about 17 minutes of PCM or hours of Opus;
+    // finalize holds it in memory together with its compressed and Base64 copies
+    private static final long MAX_SESSION_BYTES = 32L * 1024 * 1024;
+
+    // How long an upload waits for its message to be committed before giving up with 503
+    private static final long STORE_TIMEOUT_SECONDS = 30;
+
     private final Audio audioService = new Audio(); // Service for handling audio recording and playback
-    private final DataBase dataBase; // Database service for interacting with the database
+    private final SilenceTrimmer silenceTrimmer = new SilenceTrimmer(); // Removes silence from PCM uploads
+    private final DataBaseShards dataBaseShards; // Sharded database service, routes every user to their shard
 
     /**
-     * Constructor to inject the DataBase dependency using Spring's @Autowired annotation.
-     * @param dataBase the database service instance
+     * Constructor to inject the DataBaseShards dependency using Spring's @Autowired annotation.
+     * @param dataBaseShards the sharded database service instance
      */
     @Autowired
-    public CertificateController(DataBase dataBase) {
-        this.dataBase = dataBase;
+    public CertificateController(DataBaseShards dataBaseShards) {
+        this.dataBaseShards = dataBaseShards;
     }
 
     /**
@@ -60,7 +84,7 @@ public class CertificateController {
      */
     @GetMapping("/get-users")
     public ResponseEntity<List<String>> getUsers(HttpServletRequest request) throws SQLException {
-        return ResponseEntity.ok(dataBase.getUniqueData()); // Fetch and return unique usernames from the database
+        return ResponseEntity.ok(dataBaseShards.getUniqueData()); // Fetch and return unique usernames from all shards
     }
 
     /**
@@ -71,7 +95,8 @@ public class CertificateController {
      */
     @GetMapping("/get-mail")
     public ResponseEntity<List<String>> getMail(HttpServletRequest request) throws SQLException {
-        return ResponseEntity.ok(dataBase.getToUsersByData(Utils.calculateHash(request.getRemoteAddr())));
+        String user = Utils.calculateHash(request.getRemoteAddr());
+        return ResponseEntity.ok(dataBaseShards.forUser(user).getToUsersByData(user));
         // Fetch and return senders associated with the hashed client IP address
     }
 
@@ -88,6 +113,9 @@ public class CertificateController {
 
     /**
      * Handles the "/upload-audio" endpoint. Processes uploaded audio files.
+     * Uploads in the PCM format declared by Audio (WAV or audio/L16) have leading and trailing silence
+     * trimmed and long pauses shortened; the response reports how much was removed. Their duration,
+     * peak envelope and loudness are stored next to the clip for "/get-audio-metadata".
      * @param file the uploaded audio file
      * @param request the HTTP request object
      * @return a ResponseEntity indicating success or failure
@@ -96,35 +124,227 @@ public class CertificateController {
     public ResponseEntity<String> uploadAudio(@RequestParam("audio") MultipartFile file, HttpServletRequest request) {
         try (var inputStream = file.getInputStream()) { // Use try-with-resources to ensure proper resource management
             byte[] audioData = file.getBytes();
-            if (audioData.length == 20) {
-                return ResponseEntity.status(300).body("Do nothing");
+            if (clients.isEmpty()) {
+                return ResponseEntity.status(400).body("No recipients selected");
+            }
+            return storeAudio(audioData, file.getContentType(), Utils.calculateHash(request.getRemoteAddr()), clients);
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body("Failed to upload audio: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Handles the "/upload-session" endpoint. Opens a chunked upload for the current recipients.
+     * The recorder then sends its chunks while it is still recording and finalizes the session on stop.
+     * @param requestBody the request body, optionally containing the clip's "contentType"
+     * @param request the HTTP request object
+     * @return a ResponseEntity containing the new "sessionId" and the "nextSeq" to send (0)
+     * @throws SQLException if an error occurs while creating the session
+     */
+    @PostMapping("/upload-session")
+    public ResponseEntity<Map<String, Object>> openUploadSession(@RequestBody(required = false) Map<String, String> requestBody,
+                                                                 HttpServletRequest request) throws SQLException {
+        if (clients.isEmpty()) {
+            return ResponseEntity.status(400).body(Map.of("error", "No recipients selected"));
+        }
+        String contentType = requestBody != null ? requestBody.get("contentType") : null;
+        String sessionId = UUID.randomUUID().toString();
+        String owner = Utils.calculateHash(request.getRemoteAddr());
+        dataBaseShards.forUser(owner).createUploadSession(sessionId, owner, clients, contentType);
+        return ResponseEntity.ok(Map.of("sessionId", sessionId, "nextSeq", 0));
+    }
+
+    /**
+     * Handles the "/upload-session/{id}" endpoint. Tells a client where to resume an interrupted upload.
+     * "idleMillis" is the time since the last chunk arrived (or since the session was opened), so a page
+     * can tell a recording that is still running in another tab from one that was abandoned.
+     * @param id the session id
+     * @param request the HTTP request object
+     * @return a ResponseEntity containing the "sessionId", the "nextSeq" the session expects and "idleMillis"
+     * @throws SQLException if an error occurs while querying the database
+     */
+    @GetMapping("/upload-session/{id}")
+    public ResponseEntity<Map<String, Object>> getUploadSession(@PathVariable("id") String id, HttpServletRequest request)
+            throws SQLException {
+        DataBase.UploadSession session = findUploadSession(id, request);
+        if (session == null) {
+            return ResponseEntity.status(404).body(Map.of("error", "No such upload session"));
+        }
+        long idleMillis = Math.max(0, System.currentTimeMillis() - session.getLastActivityAt());
+        return ResponseEntity.ok(Map.of("sessionId", id, "nextSeq", session.getNextSeq(), "idleMillis", idleMillis));
+    }
+
+    /**
+     * Handles the "/upload-session/{id}/chunks/{seq}" endpoint. Appends one recorded chunk to a session.
+     * Chunks must arrive in order; a chunk that was already stored is acknowledged again so clients can retry
+     * safely, and a chunk from the future is rejected with 409 and the sequence number to resume from.
+     * A chunk that is too large, or that would take the session past its size limit, is rejected with 413.
+     * The body is read directly from the request and never beyond the chunk limit, so an oversized chunk
+     * is rejected without being buffered.
+     * @param id the session id
+     * @param seq the chunk's sequence number, starting at 0
+     * @param request the HTTP request object, its body holds the raw chunk bytes
+     * @return a ResponseEntity containing the "nextSeq" the session expects
+     * @throws SQLException if an error occurs while storing the chunk
+     * @throws IOException if the request body cannot be read
+     */
+    @PutMapping("/upload-session/{id}/chunks/{seq}")
+    public ResponseEntity<Map<String, Object>> uploadChunk(@PathVariable("id") String id, @PathVariable("seq") int seq,
+                                                           HttpServletRequest request)
+            throws SQLException, IOException {
+        // Reject a declared oversized body before reading any of it
+        if (request.getContentLengthLong() > MAX_CHUNK_BYTES) {
+            return ResponseEntity.status(413).body(Map.of("error", "Chunk too large"));
+        }
+        // Chunked requests declare no length: read one byte past the limit to detect an oversized body
+        byte[] chunk = request.getInputStream().readNBytes(MAX_CHUNK_BYTES + 1);
+        if (chunk.length > MAX_CHUNK_BYTES) {
+            return ResponseEntity.status(413).body(Map.of("error", "Chunk too large"));
+        }
+        DataBase.UploadSession session = findUploadSession(id, request);
+        if (session == null) {
+            return ResponseEntity.status(404).body(Map.of("error", "No such upload session"));
+        }
+        if (seq >= session.getNextSeq()) {
+            DataBase.ChunkResult result =
+                    dataBaseShards.forUser(session.getOwner()).appendUploadChunk(id, seq, chunk, MAX_SESSION_BYTES);
+            if (result == DataBase.ChunkResult.APPENDED) {
+                return ResponseEntity.ok(Map.of("nextSeq", seq + 1));
+            }
+            if (result == DataBase.ChunkResult.SESSION_FULL) {
+                return ResponseEntity.status(413).body(Map.of("error", "Upload session too large"));
             }
-            String compressedAudio = audioService.compressAudio(audioData);
-            dataBase.insertMessage(
-                    Utils.calculateHash(request.getRemoteAddr()),
-                    Utils.calculateHash(request.getRemoteAddr()),
-                    clients,
-                    compressedAudio
-            );
-            return ResponseEntity.ok("Audio uploaded successfully.");
+        }
+        // Either a retry of a stored chunk, a gap, or another request for this session got in first
+        session = findUploadSession(id, request);
+        if (session == null) {
+            return ResponseEntity.status(404).body(Map.of("error", "No such upload session"));
+        }
+        int nextSeq = session.getNextSeq();
+        return ResponseEntity.status(seq < nextSeq ? 200 : 409).body(Map.of("nextSeq", nextSeq));
+    }
+
+    /**
+     * Handles the "/upload-session/{id}/finalize" endpoint. Closes the session, assembles the chunks received
+     * so far into one clip and stores it like "/upload-audio" does.
+     * Closing comes first and is atomic, so a retried or concurrent finalize gets 404 instead of storing the clip
+     * a second time. If storing fails afterwards, the clip is lost and the client is told with a 500.
+     * @param id the session id
+     * @param request the HTTP request object
+     * @return a ResponseEntity indicating success or failure
+     */
+    @PostMapping("/upload-session/{id}/finalize")
+    public ResponseEntity<String> finalizeUploadSession(@PathVariable("id") String id, HttpServletRequest request) {
+        try {
+            String owner = Utils.calculateHash(request.getRemoteAddr());
+            DataBase.CompletedUpload upload = dataBaseShards.forUser(owner).claimUploadSession(id, owner);
+            if (upload == null) {
+                return ResponseEntity.status(404).body("No such upload session");
+            }
+            DataBase.UploadSession session = upload.getSession();
+            return storeAudio(upload.getAudioData(), session.getContentType(), session.getOwner(), session.getRecipients());
         } catch (Exception e) {
             return ResponseEntity.status(500).body("Failed to upload audio: " + e.getMessage());
         }
     }
 
     /**
-     * Handles the "/get-audio" endpoint. Retrieves and decompresses audio data.
+     * Handles the "/upload-session/{id}" DELETE endpoint. Discards an upload session and its chunks.
+     * @param id the session id
+     * @param request the HTTP request object
+     * @return a ResponseEntity indicating success
+     * @throws SQLException if an error occurs while deleting the session
+     */
+    @DeleteMapping("/upload-session/{id}")
+    public ResponseEntity<Void> abortUploadSession(@PathVariable("id") String id, HttpServletRequest request)
+            throws SQLException {
+        DataBase.UploadSession session = findUploadSession(id, request);
+        if (session == null) {
+            return ResponseEntity.notFound().build();
+        }
+        dataBaseShards.forUser(session.getOwner()).deleteUploadSession(id);
+        return ResponseEntity.ok().build();
+    }
+
+    // Returns the session only to the client that opened it; sessions live on their owner's shard
+    private DataBase.UploadSession findUploadSession(String id, HttpServletRequest request) throws SQLException {
+        String owner = Utils.calculateHash(request.getRemoteAddr());
+        DataBase.UploadSession session = dataBaseShards.forUser(owner).getUploadSession(id);
+        if (session == null || !session.getOwner().equals(owner)) {
+            return null;
+        }
+        return session;
+    }
+
+    /**
+     * Stores a complete clip for the given recipients. Clips in the PCM format declared by Audio
+     * are trimmed and analyzed first, everything else is stored as uploaded.
+     * Returns once the message is durable.
+     */
+    private ResponseEntity<String> storeAudio(byte[] audioData, String contentType, String sender, List<String> recipients)
+            throws Exception {
+        if (audioData.length <= 20) {
+            return ResponseEntity.status(300).body("Do nothing"); // Empty recording, just a container header
+        }
+        String trimReport = "";
+        AudioMetadata metadata = null;
+        PcmClip clip = PcmClip.from(audioData, contentType);
+        if (clip != null) {
+            int removedBytes = silenceTrimmer.trim(clip);
+            if (clip.getLength() == 0) {
+                return ResponseEntity.status(300).body("Do nothing"); // Nothing but silence
+            }
+            metadata = AudioMetadata.analyze(clip);
+            audioData = clip.toByteArray();
+            trimReport = String.format(" Removed %d bytes (%.2f s) of silence.",
+                    removedBytes, PcmClip.toSeconds(removedBytes));
+        }
+        String compressedAudio = audioService.compressAudio(audioData);
+        // One row per recipient sharing a single stored clip; wait until its batch has been committed
+        try {
+            dataBaseShards.submit(sender, sender, recipients, compressedAudio, metadata)
+                    .get(STORE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            // The message stays queued and may still be stored; the writer is backed up
+            return ResponseEntity.status(503).body("Audio could not be stored in time");
+        }
+        return ResponseEntity.ok("Audio uploaded successfully." + trimReport);
+    }
+
+    /**
+     * Handles the "/get-audio-metadata" endpoint. Lists the messages waiting for the current user with their
+     * duration, peak envelope and loudness, so an inbox can be rendered without downloading any audio.
+     * @param request the HTTP request object
+     * @return a ResponseEntity containing one entry per waiting message
+     * @throws SQLException if an error occurs while querying the database
+     */
+    @GetMapping("/get-audio-metadata")
+    public ResponseEntity<List<DataBase.MessageMetadata>> getAudioMetadata(HttpServletRequest request) throws SQLException {
+        String user = Utils.calculateHash(request.getRemoteAddr());
+        return ResponseEntity.ok(dataBaseShards.forUser(user).getMetadataByToUser(user));
+    }
+
+    /**
+     * Handles the "/get-audio" endpoint. Claims the oldest message from the sender selected through "/select-mail"
+     * and decompresses it. Without a selected sender nothing is claimed; draining every sender is left to
+     * "/get-audio-batch", where it has to be asked for explicitly.
      * @param request the HTTP request object
-     * @return a ResponseEntity containing the audio data or an error message
+     * @return a ResponseEntity containing the audio data, 400 if no sender is selected or 404 if nothing is waiting
      * @throws SQLException if an error occurs while querying the database
      */
     @GetMapping("/get-audio")
     public ResponseEntity<byte[]> downloadAudio(HttpServletRequest request) throws SQLException {
+        if (sender == null) {
+            return ResponseEntity.status(400).body(null);
+        }
         try {
-            String compressedAudio = dataBase.getAudio(Utils.calculateHash(request.getRemoteAddr()), sender);
-            byte[] decompressedAudio = audioService.decompressAudio(compressedAudio);
-            dataBase.deleteMessageById(sender); // Delete the message after retrieval
-            return ResponseEntity.status(200).body(decompressedAudio);
+            // Read and delete the message in one step, so it is delivered exactly once
+            String user = Utils.calculateHash(request.getRemoteAddr());
+            DataBase.Message message = dataBaseShards.forUser(user).claimNextMessage(user, sender);
+            if (message == null) {
+                return ResponseEntity.status(404).body(null);
+            }
+            return ResponseEntity.status(200).body(decodeMessage(message));
         } catch (Exception e) {
             return ResponseEntity.status(500).body(null);
         } finally {
@@ -134,13 +354,70 @@ public class CertificateController {
     }
 
     /**
-     * Handles the "/set-clients" endpoint. Sets the current client username.
-     * @param client the client username provided in the request body
+     * Handles the "/get-audio-batch" endpoint. Drains several waiting messages in one request.
+     * Each entry holds the message "id", its "fromUser" and the decompressed "audio" (Base64 in JSON).
+     * The messages are gone once claimed, so each one is decoded on its own: an entry that cannot be decoded
+     * carries an "error" instead of "audio" and does not fail the others.
+     * @param limit the maximum number of messages to return
+     * @param from the sender to drain, or all senders when omitted
+     * @param request the HTTP request object
+     * @return a ResponseEntity containing the claimed messages in arrival order
+     */
+    @GetMapping("/get-audio-batch")
+    public ResponseEntity<List<Map<String, Object>>> downloadAudioBatch(
+            @RequestParam(value = "limit", defaultValue = "10") int limit,
+            @RequestParam(value = "from", required = false) String from,
+            HttpServletRequest request) {
+        if (limit < 1 || limit > MAX_BATCH_MESSAGES) {
+            return ResponseEntity.status(400).body(null);
+        }
+        try {
+            String user = Utils.calculateHash(request.getRemoteAddr());
+            List<Map<String, Object>> result = new ArrayList<>();
+            for (DataBase.Message message : dataBaseShards.forUser(user).claimMessages(user, from, limit)) {
+                Map<String, Object> entry = new LinkedHashMap<>();
+                entry.put("id", message.getId());
+                entry.put("fromUser", message.getFromUser());
+                try {
+                    entry.put("audio", decodeMessage(message));
+                } catch (RuntimeException e) {
+                    // Payload missing or corrupt; report it and still deliver the rest of the batch
+                    e.printStackTrace();
+                    entry.put("error", "Message could not be decoded");
+                }
+                result.add(entry);
+            }
+            return ResponseEntity.ok(result);
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body(null);
+        } finally {
+            audioService.clearBuffer(); // Clear the audio buffer explicitly
+        }
+    }
+
+    // Decompresses a claimed message's audio; fails for a row whose payload is missing or not valid Base64
+    private byte[] decodeMessage(DataBase.Message message) {
+        if (message.getBytesData() == null) {
+            throw new IllegalStateException("Payload of message " + message.getId() + " is missing");
+        }
+        return audioService.decompressAudio(new String(message.getBytesData(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Handles the "/set-clients" endpoint. Sets the recipients of the following uploads.
+     * @param client the recipients' usernames provided in the request body
      * @return a ResponseEntity indicating success
      */
     @PostMapping("/set-clients")
     public ResponseEntity<Void> setClients(@RequestBody String[] client) {
-        this.clients = client[0]; // Set the client username
+        List<String> recipients = new ArrayList<>();
+        for (String recipient : client) {
+            // Skip blanks and duplicates so nobody gets the same clip twice
+            if (recipient != null && !recipient.isBlank() && !recipients.contains(recipient.trim())) {
+                recipients.add(recipient.trim());
+            }
+        }
+        this.clients = recipients; // Set the recipients' usernames
         return ResponseEntity.ok().build(); // Return a success response
     }
 
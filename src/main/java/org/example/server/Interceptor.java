@@ -1,6 +1,6 @@
 package org.example.server;
 
-import org.example.database.DataBase;
+import org.example.database.DataBaseShards;
 import org.example.utility.Utils;
 import org.springframework.stereotype.Component;
 import org.springframework.web.servlet.HandlerInterceptor;
@@ -16,14 +16,14 @@ import jakarta.servlet.http.HttpServletResponse;
 @Component // Marks this class as a Spring-managed component, allowing it to be automatically detected
 public class Interceptor implements HandlerInterceptor {
 
-    private final DataBase dataBase; // Database service for interacting with the database
+    private final DataBaseShards dataBaseShards; // Sharded database service for interacting with the database
 
     /**
-     * Constructor to inject the DataBase dependency.
-     * @param dataBase the database service instance
+     * Constructor to inject the DataBaseShards dependency.
+     * @param dataBaseShards the sharded database service instance
      */
-    public Interceptor(DataBase dataBase) {
-        this.dataBase = dataBase;
+    public Interceptor(DataBaseShards dataBaseShards) {
+        this.dataBaseShards = dataBaseShards;
     }
 
     /**
@@ -39,8 +39,9 @@ public class Interceptor implements HandlerInterceptor {
     @Override
     public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
             throws Exception {
-        // Insert the hashed client IP address as a new user in the database
-        dataBase.insertNewUser(Utils.calculateHash(request.getRemoteAddr()));
+        // Insert the hashed client IP address as a new user on the user's shard
+        String user = Utils.calculateHash(request.getRemoteAddr());
+        dataBaseShards.forUser(user).insertNewUser(user);
 
         // Log the intercepted request URL for debugging purposes
         //System.out.println("CustomInterceptor: Before controller - URL = " + request.getRequestURL());
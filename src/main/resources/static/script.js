@@ -33,36 +33,54 @@ setupFormHandler('blacklistForm', '/set-blacklist', 'Blacklist set successfully'
 const recordingButton = document.getElementById('recordingButton');
 let isRecording = false;
 let mediaRecorder;
-let audioChunks = [];
+
+// Key under which unfinished upload sessions survive a closed or crashed tab. localStorage is shared by all tabs,
+// so it holds a list, and a session is only finalized by another page once it has stopped receiving chunks
+const PENDING_SESSIONS_KEY = 'pendingUploadSessions';
+
+// A live recording sends a chunk every second; a session quiet for this long has been abandoned
+const ABANDONED_AFTER_MS = 15000;
+
+function pendingSessions() {
+    try {
+        return JSON.parse(localStorage.getItem(PENDING_SESSIONS_KEY)) || [];
+    } catch (error) {
+        return [];
+    }
+}
+
+function rememberPendingSession(sessionId) {
+    localStorage.setItem(PENDING_SESSIONS_KEY, JSON.stringify([...pendingSessions(), sessionId]));
+}
+
+function forgetPendingSession(sessionId) {
+    localStorage.setItem(PENDING_SESSIONS_KEY, JSON.stringify(pendingSessions().filter(id => id !== sessionId)));
+}
 
 recordingButton.addEventListener('click', () => {
     if (isRecording) {
-        // Stop recording
+        // Stop recording; the last chunk and the finalize request are sent from the recorder's events
         mediaRecorder.stop();
         recordingButton.textContent = 'Start Recording';
         isRecording = false;
-
-        // Send recorded audio to the server
-        const audioBlob = new Blob(audioChunks, { type: 'audio/webm' });
-        sendAudioToServer(audioBlob);
-        audioChunks = []; // Clear audio chunks after sending
     } else {
         // Start recording
         navigator.mediaDevices.getUserMedia({ audio: true })
             .then(stream => {
-                audioChunks = []; // Clear audio chunks before starting a new recording
                 mediaRecorder = new MediaRecorder(stream);
+                const upload = openUploadSession(mediaRecorder.mimeType || 'audio/webm');
 
-                // Collect audio data every second
+                // Upload every chunk as soon as it is recorded
                 mediaRecorder.ondataavailable = event => {
-                    if (event.data.size > 0) { // Add only non-empty chunks
-                        audioChunks.push(event.data);
+                    if (event.data.size > 0) { // Send only non-empty chunks
+                        upload.send(event.data);
                     }
                 };
 
                 // Handle recording stop event
                 mediaRecorder.onstop = () => {
-                    console.log('Recording stopped. Total chunks:', audioChunks.length);
+                    console.log('Recording stopped. Total chunks:', upload.chunkCount());
+                    upload.finish();
                 };
 
                 // Start recording with a timeslice of 1000ms (1 second)
@@ -77,26 +95,87 @@ recordingButton.addEventListener('click', () => {
     }
 });
 
-// Function to send recorded audio to the server
-function sendAudioToServer(audioBlob) {
-    if (audioBlob.size <= 20) {
-        console.error('Recorded audio is too small or empty.');
-        return;
-    }
+// Open a chunked upload session; chunks are sent strictly one after another so the server sees them in order
+function openUploadSession(contentType) {
+    let seq = 0;
+    let pending = sendDataToServer('/upload-session', { contentType: contentType })
+        .then(response => response.json())
+        .then(session => {
+            rememberPendingSession(session.sessionId);
+            return session.sessionId;
+        });
 
-    const formData = new FormData();
-    formData.append('audio', audioBlob);
+    return {
+        send(chunk) {
+            const chunkSeq = seq++;
+            pending = pending.then(sessionId => uploadChunk(sessionId, chunkSeq, chunk).then(() => sessionId));
+        },
+        finish() {
+            pending
+                .then(sessionId => finalizeUploadSession(sessionId))
+                .catch(error => console.error('Error uploading audio:', error));
+        },
+        chunkCount() {
+            return seq;
+        }
+    };
+}
 
-    fetch('/upload-audio', {
-        method: 'POST',
-        body: formData
+// Upload one chunk, retrying with a short back-off; the server acknowledges chunks it already stored
+function uploadChunk(sessionId, seq, chunk, attempt = 0) {
+    return fetch(`/upload-session/${sessionId}/chunks/${seq}`, {
+        method: 'PUT',
+        headers: { 'Content-Type': 'application/octet-stream' },
+        body: chunk
     })
-    .then(response => response.text())
-    .then(message => {
-        console.log(message);
+    .then(response => {
+        if (!response.ok) {
+            const error = new Error(`Chunk ${seq} rejected with status ${response.status}`);
+            error.final = response.status === 413; // The recording outgrew the session, retrying cannot help
+            throw error;
+        }
     })
     .catch(error => {
-        console.error('Error uploading audio:', error);
+        if (error.final || attempt >= 3) {
+            throw error;
+        }
+        return new Promise(resolve => setTimeout(resolve, 500 * (attempt + 1)))
+            .then(() => uploadChunk(sessionId, seq, chunk, attempt + 1));
+    });
+}
+
+// Turn the chunks stored so far into a message
+function finalizeUploadSession(sessionId) {
+    return fetch(`/upload-session/${sessionId}/finalize`, { method: 'POST' })
+        .then(response => response.text().then(message => {
+            if (response.status < 500) {
+                forgetPendingSession(sessionId);
+            }
+            console.log(message);
+        }));
+}
+
+// Deliver what the server already received from recordings whose tab was closed before they finished.
+// Sessions that still receive chunks belong to a recording running in another tab and are left alone
+function finalizePendingUpload() {
+    pendingSessions().forEach(sessionId => {
+        fetch(`/upload-session/${sessionId}`, { method: 'GET' })
+            .then(response => {
+                if (response.status === 404) {
+                    forgetPendingSession(sessionId); // Already finalized, discarded or expired
+                    return null;
+                }
+                if (!response.ok) {
+                    throw new Error(`Failed to check upload session ${sessionId}`);
+                }
+                return response.json();
+            })
+            .then(session => {
+                if (session && session.idleMillis >= ABANDONED_AFTER_MS) {
+                    return finalizeUploadSession(sessionId);
+                }
+            })
+            .catch(error => console.error('Error uploading audio:', error));
     });
 }
 
@@ -186,6 +265,7 @@ function loadMail() {
 
 // Load data on page load
 window.addEventListener('load', () => {
+    finalizePendingUpload();
     loadUsers();
     loadMail();
 });
\ No newline at end of file
@@ -0,0 +1,95 @@
+package org.example.audio;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AudioMetadataTest {
+
+    @Test
+    void measuresDurationLoudnessAndPeaks() {
+        // One second of a half-scale square wave: -6.02 dBFS, every peak at half height
+        AudioMetadata metadata = AudioMetadata.analyze(clip(square(16000, 16384)));
+        assertEquals(16000, metadata.getSampleCount());
+        assertEquals(1000, metadata.getDurationMillis());
+        assertEquals(-6.02, metadata.getLoudnessDbfs(), 0.01);
+        assertEquals(AudioMetadata.PEAK_COUNT, metadata.getPeaks().length);
+        for (byte peak : metadata.getPeaks()) {
+            assertEquals(128, peak & 0xff);
+        }
+    }
+
+    @Test
+    void reportsSilenceAtTheFloor() {
+        AudioMetadata metadata = AudioMetadata.analyze(clip(new short[8000]));
+        assertEquals(500, metadata.getDurationMillis());
+        assertEquals(AudioMetadata.SILENCE_DBFS, metadata.getLoudnessDbfs(), 0);
+        for (byte peak : metadata.getPeaks()) {
+            assertEquals(0, peak);
+        }
+    }
+
+    @Test
+    void envelopeFollowsTheClip() {
+        short[] samples = new short[16000];
+        // Loud first half, silent second half; 16000 samples split into 64 buckets of 250
+        System.arraycopy(square(8000, Short.MAX_VALUE), 0, samples, 0, 8000);
+        byte[] peaks = AudioMetadata.analyze(clip(samples)).getPeaks();
+        for (int i = 0; i < peaks.length; i++) {
+            assertEquals(i < peaks.length / 2 ? 255 : 0, peaks[i] & 0xff, "peak " + i);
+        }
+    }
+
+    @Test
+    void shortClipsHaveOnePeakPerSample() {
+        AudioMetadata metadata = AudioMetadata.analyze(clip(square(10, 1000)));
+        assertEquals(10, metadata.getSampleCount());
+        assertEquals(10, metadata.getPeaks().length);
+    }
+
+    private static short[] square(int count, int amplitude) {
+        short[] samples = new short[count];
+        for (int i = 0; i < count; i++) {
+            samples[i] = (short) (i % 2 == 0 ? amplitude : -amplitude);
+        }
+        return samples;
+    }
+
+    // Wraps the samples in a canonical 16 kHz mono WAV file
+    private static PcmClip clip(short[] samples) {
+        byte[] wav = new byte[44 + samples.length * 2];
+        putAscii(wav, 0, "RIFF");
+        putInt(wav, 4, wav.length - 8);
+        putAscii(wav, 8, "WAVE");
+        putAscii(wav, 12, "fmt ");
+        putInt(wav, 16, 16);
+        putShort(wav, 20, 1);
+        putShort(wav, 22, Audio.CHANNELS);
+        putInt(wav, 24, (int) Audio.SAMPLE_RATE);
+        putInt(wav, 28, PcmClip.BYTES_PER_SECOND);
+        putShort(wav, 32, Audio.SAMPLE_SIZE_IN_BITS / 8 * Audio.CHANNELS);
+        putShort(wav, 34, Audio.SAMPLE_SIZE_IN_BITS);
+        putAscii(wav, 36, "data");
+        putInt(wav, 40, samples.length * 2);
+        for (int i = 0; i < samples.length; i++) {
+            putShort(wav, 44 + i * 2, samples[i]);
+        }
+        return PcmClip.from(wav, "audio/wav");
+    }
+
+    private static void putAscii(byte[] bytes, int position, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            bytes[position + i] = (byte) text.charAt(i);
+        }
+    }
+
+    private static void putShort(byte[] bytes, int position, int value) {
+        bytes[position] = (byte) value;
+        bytes[position + 1] = (byte) (value >> 8);
+    }
+
+    private static void putInt(byte[] bytes, int position, int value) {
+        putShort(bytes, position, value);
+        putShort(bytes, position + 2, value >> 16);
+    }
+}
@@ -0,0 +1,170 @@
+package org.example.audio;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JitterBufferTest {
+
+    private static final int CAPACITY = 8;
+    private static final int TARGET_DEPTH = 3;
+
+    private final JitterBuffer buffer = new JitterBuffer(CAPACITY, TARGET_DEPTH);
+    private final short[] out = new short[MixingRoom.FRAME_SAMPLES];
+
+    @Test
+    void waitsForTargetDepthBeforePlaying() {
+        offer(0);
+        offer(1);
+        assertFalse(buffer.poll(out));
+        assertSilence();
+
+        offer(2);
+        assertPlays(0);
+        assertPlays(1);
+        assertPlays(2);
+    }
+
+    @Test
+    void reordersFrames() {
+        offer(2);
+        offer(0);
+        offer(1);
+        assertPlays(0);
+        assertPlays(1);
+        assertPlays(2);
+    }
+
+    @Test
+    void playsMissingFrameAsSilence() {
+        offer(0);
+        offer(1);
+        offer(3);
+        assertPlays(0);
+        assertPlays(1);
+        assertFalse(buffer.poll(out));
+        assertSilence();
+        assertPlays(3);
+    }
+
+    @Test
+    void dropsFramesThatArriveAfterTheirTurn() {
+        offer(0);
+        offer(1);
+        offer(2);
+        assertPlays(0);
+        assertFalse(buffer.offer(0, frame(0), 0));
+        assertPlays(1);
+    }
+
+    @Test
+    void skipsAheadWhenSenderRunsBeyondCapacity() {
+        offer(0);
+        offer(1);
+        offer(2);
+        // Seq 10 does not fit next to seq 0..2, so playout jumps to 3 and the older frames are dropped
+        offer(10);
+        assertFalse(buffer.offer(2, frame(2), 0));
+        for (int seq = 3; seq < 10; seq++) {
+            assertFalse(buffer.poll(out), "seq " + seq + " was never sent");
+        }
+        assertPlays(10);
+    }
+
+    @Test
+    void restartsAfterLongStall() {
+        offer(0);
+        offer(1);
+        offer(2);
+        // Far beyond the capacity: everything buffered is dropped and playout continues right before seq 100
+        offer(100);
+        assertFalse(buffer.offer(50, frame(50), 0));
+        for (int seq = 100 - CAPACITY + 1; seq < 100; seq++) {
+            assertFalse(buffer.poll(out));
+        }
+        assertPlays(100);
+    }
+
+    @Test
+    void rebuffersAfterRunningDry() {
+        offer(0);
+        offer(1);
+        offer(2);
+        assertPlays(0);
+        assertPlays(1);
+        assertPlays(2);
+        assertFalse(buffer.poll(out));
+
+        // Frames from before the stall stay rejected, new ones wait for the target depth again
+        assertFalse(buffer.offer(1, frame(1), 0));
+        offer(3);
+        offer(4);
+        assertFalse(buffer.poll(out));
+        offer(5);
+        assertPlays(3);
+    }
+
+    @Test
+    void resetForgetsEverything() {
+        offer(5);
+        offer(6);
+        offer(7);
+        buffer.reset();
+        assertFalse(buffer.poll(out));
+
+        // After a reset the sequence may start over
+        offer(0);
+        offer(1);
+        offer(2);
+        assertPlays(0);
+    }
+
+    @Test
+    void decodesLittleEndianSamplesAtOffset() {
+        byte[] pcm = new byte[4 + MixingRoom.FRAME_BYTES];
+        pcm[4] = (byte) 0x34;
+        pcm[5] = (byte) 0xff;
+        buffer.offer(0, pcm, 4);
+        buffer.offer(1, pcm, 4);
+        buffer.offer(2, pcm, 4);
+        assertTrue(buffer.poll(out));
+        assertEquals((short) 0xff34, out[0]);
+        assertEquals(0, out[1]);
+    }
+
+    @Test
+    void rejectsTargetDepthBeyondCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new JitterBuffer(4, 5));
+        assertThrows(IllegalArgumentException.class, () -> new JitterBuffer(4, 0));
+    }
+
+    private void offer(int seq) {
+        assertTrue(buffer.offer(seq, frame(seq), 0), "seq " + seq + " should be accepted");
+    }
+
+    private void assertPlays(int seq) {
+        assertTrue(buffer.poll(out), "seq " + seq + " should be played");
+        for (short sample : out) {
+            assertEquals(seq + 1, sample);
+        }
+    }
+
+    private void assertSilence() {
+        for (short sample : out) {
+            assertEquals(0, sample);
+        }
+    }
+
+    // A frame whose samples all hold seq + 1, so every frame is recognizable and none is silent
+    private static byte[] frame(int seq) {
+        byte[] pcm = new byte[MixingRoom.FRAME_BYTES];
+        for (int i = 0; i < pcm.length; i += 2) {
+            pcm[i] = (byte) (seq + 1);
+            pcm[i + 1] = (byte) ((seq + 1) >> 8);
+        }
+        return pcm;
+    }
+}
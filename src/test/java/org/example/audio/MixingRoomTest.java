@@ -0,0 +1,149 @@
+package org.example.audio;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MixingRoomTest {
+
+    // First sample of the last frame each participant received
+    private final int[] heard = new int[4];
+    private final int[] frames = new int[4];
+
+    private final MixingRoom room = new MixingRoom(heard.length, (participant, pcm) -> {
+        heard[participant] = (short) ((pcm[0] & 0xff) | (pcm[1] << 8));
+        frames[participant]++;
+    });
+
+    @Test
+    void everyoneHearsEveryoneButThemselves() {
+        int a = room.join();
+        int b = room.join();
+        int c = room.join();
+        speak(a, 100);
+        speak(b, 200);
+        speak(c, 300);
+        room.mix();
+        assertEquals(500, heard[a]);
+        assertEquals(400, heard[b]);
+        assertEquals(300, heard[c]);
+    }
+
+    @Test
+    void silentListenersHearTheFullMix() {
+        int a = room.join();
+        int b = room.join();
+        int c = room.join();
+        int d = room.join();
+        speak(a, 100);
+        speak(b, -250);
+        room.mix();
+        assertEquals(-250, heard[a]);
+        assertEquals(100, heard[b]);
+        assertEquals(-150, heard[c]);
+        assertEquals(-150, heard[d]);
+    }
+
+    @Test
+    void clipsToSixteenBits() {
+        int a = room.join();
+        int b = room.join();
+        int c = room.join();
+        speak(a, 30000);
+        speak(b, 30000);
+        room.mix();
+        assertEquals(Short.MAX_VALUE, heard[c]);
+        assertEquals(30000, heard[a]);
+    }
+
+    @Test
+    void onlyJoinedParticipantsReceiveFrames() {
+        int a = room.join();
+        room.mix();
+        assertEquals(1, frames[a]);
+        for (int p = 0; p < frames.length; p++) {
+            if (p != a) {
+                assertEquals(0, frames[p]);
+            }
+        }
+    }
+
+    @Test
+    void rejectsFramesForEmptySlots() {
+        int a = room.join();
+        assertFalse(room.offer(a + 1, 0, new byte[MixingRoom.FRAME_BYTES], 0));
+        assertFalse(room.offer(-1, 0, new byte[MixingRoom.FRAME_BYTES], 0));
+        assertFalse(room.offer(heard.length, 0, new byte[MixingRoom.FRAME_BYTES], 0));
+    }
+
+    @Test
+    void leavingDropsBufferedFramesAndLatePackets() {
+        int a = room.join();
+        int b = room.join();
+        speak(a, 100);
+        room.leave(a);
+        assertFalse(room.offer(a, 3, frame(100), 0));
+
+        // The slot's next owner starts with an empty buffer
+        assertEquals(a, room.join());
+        room.mix();
+        assertEquals(0, heard[b]);
+    }
+
+    @Test
+    void outputRunsWithoutTheRoomLock() {
+        ExecutorService network = Executors.newSingleThreadExecutor();
+        try {
+            AtomicReference<MixingRoom> self = new AtomicReference<>();
+            AtomicBoolean offered = new AtomicBoolean();
+            MixingRoom slow = new MixingRoom(2, (participant, pcm) -> {
+                // Waits for a network thread to offer a frame; this deadlocks if mix() holds the room's lock
+                Future<Boolean> offer = network.submit(() -> self.get().offer(participant, 0, frame(1), 0));
+                try {
+                    offered.set(offer.get(5, TimeUnit.SECONDS));
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            self.set(slow);
+            slow.join();
+            slow.mix();
+            assertTrue(offered.get());
+        } finally {
+            network.shutdownNow();
+        }
+    }
+
+    @Test
+    void fullRoomRefusesToJoin() {
+        for (int p = 0; p < heard.length; p++) {
+            room.join();
+        }
+        assertEquals(-1, room.join());
+    }
+
+    // Offers enough frames to fill the jitter buffer up to its playout depth
+    private void speak(int participant, int sample) {
+        for (int seq = 0; seq < MixingRoom.JITTER_TARGET_DEPTH; seq++) {
+            room.offer(participant, seq, frame(sample), 0);
+        }
+    }
+
+    private static byte[] frame(int sample) {
+        byte[] pcm = new byte[MixingRoom.FRAME_BYTES];
+        for (int i = 0; i < pcm.length; i += 2) {
+            pcm[i] = (byte) sample;
+            pcm[i + 1] = (byte) (sample >> 8);
+        }
+        return pcm;
+    }
+}
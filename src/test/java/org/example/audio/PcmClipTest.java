@@ -0,0 +1,54 @@
+package org.example.audio;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class PcmClipTest {
+
+    @Test
+    void swapsBigEndianL16ForProcessingAndBack() {
+        byte[] upload = {0x12, 0x34, 0x56, 0x78, 0x01};
+        PcmClip clip = PcmClip.from(upload.clone(), "audio/L16; rate=16000; channels=1");
+        assertNotNull(clip);
+        assertEquals(4, clip.getLength());
+        assertEquals(0x34, clip.getBytes()[0]);
+        assertEquals(0x12, clip.getBytes()[1]);
+        assertArrayEquals(new byte[] {0x12, 0x34, 0x56, 0x78}, clip.toByteArray());
+    }
+
+    @Test
+    void rejectsL16InAnotherFormat() {
+        assertNull(PcmClip.from(new byte[4], "audio/L16;rate=48000"));
+        assertNull(PcmClip.from(new byte[4], "audio/L16;rate=16000;channels=2"));
+        // The rate parameter is mandatory (RFC 2586)
+        assertNull(PcmClip.from(new byte[4], "audio/L16"));
+    }
+
+    @Test
+    void rejectsWavChunkRunningPastTheEnd() {
+        byte[] wav = new byte[64];
+        putAscii(wav, 0, "RIFF");
+        putAscii(wav, 8, "WAVE");
+        putAscii(wav, 12, "LIST");
+        wav[16] = (byte) 0xf0;
+        wav[17] = (byte) 0xff;
+        wav[18] = (byte) 0xff;
+        wav[19] = (byte) 0x7f;
+        assertNull(PcmClip.from(wav, "audio/wav"));
+    }
+
+    @Test
+    void ignoresOtherContainers() {
+        assertNull(PcmClip.from(new byte[64], "audio/webm"));
+    }
+
+    private static void putAscii(byte[] bytes, int position, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            bytes[position + i] = (byte) text.charAt(i);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package org.example.audio;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SilenceTrimmerTest {
+
+    // About -10 dBFS, far above the default threshold
+    private static final int VOICE = 10000;
+
+    private static final int PRE_ROLL_FRAMES = SilenceTrimmer.DEFAULT_PRE_ROLL_MILLIS / SilenceTrimmer.FRAME_MILLIS;
+    private static final int HANGOVER_FRAMES = SilenceTrimmer.DEFAULT_HANGOVER_MILLIS / SilenceTrimmer.FRAME_MILLIS;
+    private static final int MAX_GAP_FRAMES = SilenceTrimmer.DEFAULT_MAX_GAP_MILLIS / SilenceTrimmer.FRAME_MILLIS;
+
+    private final SilenceTrimmer trimmer = new SilenceTrimmer();
+
+    @Test
+    void removesEverythingFromSilence() {
+        byte[] pcm = frames(0, 50);
+        assertEquals(0, trimmer.trim(pcm, 0, pcm.length));
+    }
+
+    @Test
+    void trimsEdgesKeepingPreRollAndHangover() {
+        byte[] pcm = concat(frames(0, 20), frames(VOICE, 10), frames(0, 20));
+        int kept = trimmer.trim(pcm, 0, pcm.length);
+        assertEquals((PRE_ROLL_FRAMES + 10 + HANGOVER_FRAMES) * SilenceTrimmer.FRAME_BYTES, kept);
+        assertLevels(pcm, PRE_ROLL_FRAMES, 0, 10, VOICE, HANGOVER_FRAMES, 0);
+    }
+
+    @Test
+    void shortensLongPausesToMaxGap() {
+        byte[] pcm = concat(frames(VOICE, 10), frames(0, 100), frames(VOICE, 10));
+        int kept = trimmer.trim(pcm, 0, pcm.length);
+        assertEquals((10 + MAX_GAP_FRAMES + 10) * SilenceTrimmer.FRAME_BYTES, kept);
+        assertLevels(pcm, 10, VOICE, MAX_GAP_FRAMES, 0, 10, VOICE);
+    }
+
+    @Test
+    void keepsShortPauses() {
+        byte[] pcm = concat(frames(VOICE, 10), frames(0, 15), frames(VOICE, 10));
+        assertEquals(35 * SilenceTrimmer.FRAME_BYTES, trimmer.trim(pcm, 0, pcm.length));
+    }
+
+    @Test
+    void keepsPausesWhenGapCollapsingIsOff() {
+        SilenceTrimmer keepGaps = new SilenceTrimmer(SilenceTrimmer.DEFAULT_THRESHOLD_DBFS,
+                SilenceTrimmer.DEFAULT_PRE_ROLL_MILLIS, SilenceTrimmer.DEFAULT_HANGOVER_MILLIS, SilenceTrimmer.KEEP_GAPS);
+        byte[] pcm = concat(frames(VOICE, 10), frames(0, 100), frames(VOICE, 10), frames(0, 50));
+        int kept = keepGaps.trim(pcm, 0, pcm.length);
+        assertEquals((10 + 100 + 10 + HANGOVER_FRAMES) * SilenceTrimmer.FRAME_BYTES, kept);
+    }
+
+    @Test
+    void trimsInsideOffsetAndLeavesTheRestAlone() {
+        byte[] clip = concat(frames(0, 20), frames(VOICE, 10));
+        byte[] pcm = new byte[8 + clip.length];
+        pcm[0] = 42;
+        System.arraycopy(clip, 0, pcm, 8, clip.length);
+        int kept = trimmer.trim(pcm, 8, clip.length);
+        assertEquals((PRE_ROLL_FRAMES + 10) * SilenceTrimmer.FRAME_BYTES, kept);
+        assertEquals(42, pcm[0]);
+        assertEquals(0, sampleAt(pcm, 8));
+        assertEquals(VOICE, sampleAt(pcm, 8 + PRE_ROLL_FRAMES * SilenceTrimmer.FRAME_BYTES));
+    }
+
+    @Test
+    void rejectsMaxGapShorterThanPreRollAndHangover() {
+        assertThrows(IllegalArgumentException.class, () -> new SilenceTrimmer(-45, 100, 200, 200));
+    }
+
+    // Checks the trimmed output frame by frame: pairs of (frame count, sample level)
+    private static void assertLevels(byte[] pcm, int... runs) {
+        int position = 0;
+        for (int run = 0; run < runs.length; run += 2) {
+            for (int frame = 0; frame < runs[run]; frame++) {
+                assertEquals(runs[run + 1], sampleAt(pcm, position), "frame at byte " + position);
+                position += SilenceTrimmer.FRAME_BYTES;
+            }
+        }
+    }
+
+    private static int sampleAt(byte[] pcm, int position) {
+        return (short) ((pcm[position] & 0xff) | (pcm[position + 1] << 8));
+    }
+
+    private static byte[] frames(int level, int count) {
+        byte[] pcm = new byte[count * SilenceTrimmer.FRAME_BYTES];
+        for (int i = 0; i < pcm.length; i += 2) {
+            pcm[i] = (byte) level;
+            pcm[i + 1] = (byte) (level >> 8);
+        }
+        return pcm;
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        int length = 0;
+        for (byte[] part : parts) {
+            length += part.length;
+        }
+        byte[] result = new byte[length];
+        int position = 0;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, result, position, part.length);
+            position += part.length;
+        }
+        return result;
+    }
+}
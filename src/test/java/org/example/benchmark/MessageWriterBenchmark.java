@@ -0,0 +1,123 @@
+package org.example.benchmark;
+
+import org.example.database.DataBase;
+import org.example.database.MessageWriter;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures message insert throughput and latency with and without the write-behind queue.
+ * Every producer thread behaves like an upload request: it submits one message and waits until it is durable.
+ * The first row is the old path (one autocommit insert per message), the following rows sweep the batch size.
+ *
+ * Run after mvn test-compile:
+ * java -cp "target/classes:target/test-classes:path/to/sqlite-jdbc.jar" org.example.benchmark.MessageWriterBenchmark [messages] [producers] [delayMs]
+ */
+public class MessageWriterBenchmark {
+
+    private static final int[] BATCH_SIZES = {1, 4, 16, 64, 256};
+
+    private static final int QUEUE_CAPACITY = 1024;
+
+    // Size of the raw payload before Base64 encoding, roughly a few seconds of compressed audio
+    private static final int PAYLOAD_BYTES = 8 * 1024;
+
+    public static void main(String[] args) throws Exception {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int producers = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        long maxDelayMillis = args.length > 2 ? Long.parseLong(args[2]) : 5;
+
+        byte[] raw = new byte[PAYLOAD_BYTES];
+        new Random(42).nextBytes(raw);
+        String payload = Base64.getEncoder().encodeToString(raw);
+
+        System.out.printf("%d messages, %d producers, max batch delay %d ms%n", messages, producers, maxDelayMillis);
+        System.out.printf("%-12s %12s %10s %10s %10s%n", "mode", "msg/s", "p50 ms", "p99 ms", "max ms");
+
+        print("autocommit", run(messages, producers, payload, null, 0));
+        for (int batchSize : BATCH_SIZES) {
+            print("batch=" + batchSize, run(messages, producers, payload, batchSize, maxDelayMillis));
+        }
+    }
+
+    /**
+     * Runs one configuration against a fresh database file.
+     * @param batchSize null for direct autocommit inserts, otherwise the writer's batch size
+     * @return per-message latencies in nanoseconds, with the total wall time in the last slot
+     */
+    private static long[] run(int messages, int producers, String payload, Integer batchSize, long maxDelayMillis)
+            throws Exception {
+        File file = File.createTempFile("message-writer-bench", ".db");
+        file.deleteOnExit();
+        DataBase dataBase = new DataBase(file.getPath());
+        dataBase.openConnection();
+        dataBase.createUsersTable();
+        dataBase.createTable();
+        dataBase.createPayloadsTable();
+        dataBase.createPayloadMetadataTable();
+        MessageWriter writer = batchSize == null
+                ? null
+                : new MessageWriter(dataBase, QUEUE_CAPACITY, batchSize, maxDelayMillis);
+
+        long[] latencies = new long[messages + 1];
+        CountDownLatch done = new CountDownLatch(producers);
+        Thread[] threads = new Thread[producers];
+        long start = System.nanoTime();
+        for (int p = 0; p < producers; p++) {
+            int first = p;
+            threads[p] = new Thread(() -> {
+                try {
+                    for (int i = first; i < messages; i += producers) {
+                        String user = "user-" + (i % 97);
+                        // Distinct clips, so every message writes its own payload
+                        String clip = payload + i;
+                        long begin = System.nanoTime();
+                        if (writer == null) {
+                            dataBase.insertMessage(user, user, "recipient", clip);
+                        } else {
+                            writer.submit(user, user, List.of("recipient"), clip, null).get();
+                        }
+                        latencies[i] = System.nanoTime() - begin;
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                } finally {
+                    done.countDown();
+                }
+            });
+            threads[p].start();
+        }
+        done.await();
+        latencies[messages] = System.nanoTime() - start;
+
+        if (writer != null) {
+            writer.close();
+        }
+        dataBase.closeConnection();
+        file.delete();
+        return latencies;
+    }
+
+    private static void print(String mode, long[] latencies) {
+        int count = latencies.length - 1;
+        long total = latencies[count];
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        System.out.printf("%-12s %12.0f %10.2f %10.2f %10.2f%n",
+                mode,
+                count / (total / 1e9),
+                toMillis(sorted[count / 2]),
+                toMillis(sorted[(int) (count * 0.99)]),
+                toMillis(sorted[count - 1]));
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
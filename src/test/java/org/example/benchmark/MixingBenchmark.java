@@ -0,0 +1,80 @@
+package org.example.benchmark;
+
+import org.example.audio.MixingRoom;
+
+import java.util.Random;
+
+/**
+ * Measures how many rooms one core can mix in real time.
+ * Each simulated tick decodes one frame per speaker into its jitter buffer and mixes the room, which is
+ * the work the mixer thread does every {@link MixingRoom#FRAME_MILLIS}. Rooms are mixed one after another
+ * on the calling thread, so the result is per core.
+ *
+ * Run after mvn test-compile:
+ * java -cp target/classes:target/test-classes org.example.benchmark.MixingBenchmark [ticks]
+ */
+public class MixingBenchmark {
+
+    private static final int[] PARTICIPANTS = {2, 4, 8, 16, 32};
+
+    // Number of rooms mixed per measurement, enough to spill out of the CPU caches
+    private static final int ROOMS = 64;
+
+    public static void main(String[] args) {
+        int ticks = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+
+        System.out.printf("%d rooms per run, %d ticks of %d ms%n", ROOMS, ticks, MixingRoom.FRAME_MILLIS);
+        System.out.printf("%-13s %-9s %14s %16s %20s%n",
+                "participants", "speakers", "us/room tick", "rooms per core", "participants/core");
+
+        for (int participants : PARTICIPANTS) {
+            // Typical conversation with two people talking, then everybody talking at once
+            run(participants, Math.min(2, participants), ticks / 4, false);
+            print(participants, Math.min(2, participants), run(participants, Math.min(2, participants), ticks, true));
+            run(participants, participants, ticks / 4, false);
+            print(participants, participants, run(participants, participants, ticks, true));
+        }
+    }
+
+    /**
+     * @return nanoseconds spent per room and tick
+     */
+    private static double run(int participants, int speakers, int ticks, boolean measure) {
+        long[] sink = new long[1];
+        MixingRoom.Output output = (participant, pcm) -> sink[0] += pcm[participant];
+        MixingRoom[] rooms = new MixingRoom[ROOMS];
+        for (int r = 0; r < ROOMS; r++) {
+            rooms[r] = new MixingRoom(participants, output);
+            for (int p = 0; p < participants; p++) {
+                rooms[r].join();
+            }
+        }
+
+        // A few seconds of noise to send, so every frame differs
+        byte[] voice = new byte[MixingRoom.FRAME_BYTES * 256];
+        new Random(7).nextBytes(voice);
+        int frames = voice.length / MixingRoom.FRAME_BYTES;
+
+        long start = System.nanoTime();
+        for (int tick = 0; tick < ticks; tick++) {
+            int offset = (tick % frames) * MixingRoom.FRAME_BYTES;
+            for (MixingRoom room : rooms) {
+                for (int p = 0; p < speakers; p++) {
+                    room.offer(p, tick, voice, offset);
+                }
+                room.mix();
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        if (sink[0] == 42) {
+            System.out.print(""); // Keep the output observable so the JIT cannot drop the mixing
+        }
+        return measure ? elapsed / (double) ticks / ROOMS : 0;
+    }
+
+    private static void print(int participants, int speakers, double nanosPerRoomTick) {
+        double roomsPerCore = MixingRoom.FRAME_MILLIS * 1_000_000.0 / nanosPerRoomTick;
+        System.out.printf("%-13d %-9d %14.2f %16.0f %20.0f%n",
+                participants, speakers, nanosPerRoomTick / 1000, roomsPerCore, roomsPerCore * participants);
+    }
+}
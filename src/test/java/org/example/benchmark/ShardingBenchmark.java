@@ -0,0 +1,111 @@
+package org.example.benchmark;
+
+import org.example.database.DataBase;
+import org.example.database.DataBaseShards;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Measures how upload throughput scales with the number of SQLite shards.
+ * Every producer thread behaves like an upload request: it sends one clip to a random recipient
+ * and waits until it is durable. Each shard count runs against fresh files in a temporary directory.
+ *
+ * Run after mvn test-compile:
+ * java -cp "target/classes:target/test-classes:path/to/sqlite-jdbc.jar" org.example.benchmark.ShardingBenchmark [messages] [producers] [batchSize]
+ */
+public class ShardingBenchmark {
+
+    private static final int[] SHARD_COUNTS = {1, 2, 4, 8};
+
+    private static final int QUEUE_CAPACITY = 1024;
+
+    private static final long MAX_BATCH_DELAY_MILLIS = 5;
+
+    // Number of distinct recipients, spread over the shards by their hash
+    private static final int USERS = 1000;
+
+    // Size of the raw payload before Base64 encoding, roughly a few seconds of compressed audio
+    private static final int PAYLOAD_BYTES = 8 * 1024;
+
+    public static void main(String[] args) throws Exception {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int producers = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int batchSize = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+
+        byte[] raw = new byte[PAYLOAD_BYTES];
+        new Random(42).nextBytes(raw);
+        String payload = Base64.getEncoder().encodeToString(raw);
+
+        System.out.printf("%d messages, %d producers, batch size %d%n", messages, producers, batchSize);
+        System.out.printf("%-8s %12s %10s%n", "shards", "msg/s", "speedup");
+
+        double baseline = 0;
+        for (int shardCount : SHARD_COUNTS) {
+            // Warm up the JIT and the file system on a short run first
+            run(shardCount, messages / 10, producers, batchSize, payload);
+            double throughput = run(shardCount, messages, producers, batchSize, payload);
+            if (baseline == 0) {
+                baseline = throughput;
+            }
+            System.out.printf("%-8d %12.0f %9.2fx%n", shardCount, throughput, throughput / baseline);
+        }
+    }
+
+    /**
+     * Runs one shard count against fresh database files.
+     * @return messages committed per second
+     */
+    private static double run(int shardCount, int messages, int producers, int batchSize, String payload)
+            throws Exception {
+        File directory = Files.createTempDirectory("sharding-bench").toFile();
+        List<DataBase> dataBases = new ArrayList<>();
+        for (int shard = 0; shard < shardCount; shard++) {
+            dataBases.add(new DataBase(new File(directory, "data-" + shard + ".db").getPath()));
+        }
+        DataBaseShards shards = new DataBaseShards(dataBases, QUEUE_CAPACITY, batchSize, MAX_BATCH_DELAY_MILLIS);
+        shards.forEachShard(dataBase -> {
+            dataBase.openConnection();
+            dataBase.createUsersTable();
+            dataBase.createTable();
+            dataBase.createPayloadsTable();
+            dataBase.createPayloadMetadataTable();
+            return null;
+        });
+
+        CountDownLatch done = new CountDownLatch(producers);
+        long start = System.nanoTime();
+        for (int p = 0; p < producers; p++) {
+            int first = p;
+            new Thread(() -> {
+                try {
+                    for (int i = first; i < messages; i += producers) {
+                        String sender = "user-" + (i % USERS);
+                        String recipient = "user-" + ThreadLocalRandom.current().nextInt(USERS);
+                        // Distinct clips, so every message writes its own payload
+                        shards.submit(sender, sender, List.of(recipient), payload + i, null).get();
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        done.await();
+        long elapsed = System.nanoTime() - start;
+
+        shards.close();
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+        return messages / (elapsed / 1e9);
+    }
+}
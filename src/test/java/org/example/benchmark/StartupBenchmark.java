@@ -0,0 +1,130 @@
+package org.example.benchmark;
+
+import java.io.File;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Measures time-to-first-request: from launching the JVM until the first request through the interceptor
+ * (which touches the database) has been answered. Each mode adds one startup optimization on top of the
+ * previous one, every run uses a fresh database, and the median of all runs is reported.
+ * The AOT rows need classes built with mvn -Pfast-startup; the CDS row needs an archive recorded with
+ * -XX:ArchiveClassesAtExit with the same class path, as done in the Dockerfile.
+ *
+ * Run after mvn test-compile:
+ * java -cp target/test-classes org.example.benchmark.StartupBenchmark "target/classes:path/to/dependency/jars/*" [runs] [cdsArchive]
+ */
+public class StartupBenchmark {
+
+    private static final Duration TIMEOUT = Duration.ofMinutes(2);
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("Usage: StartupBenchmark <application class path> [runs] [cdsArchive]");
+            return;
+        }
+        String classPath = args[0];
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        String cdsArchive = args.length > 2 ? args[2] : null;
+
+        List<String> fastStartup = List.of("--spring.profiles.active=fast-startup");
+        List<String> aot = List.of("-Dspring.aot.enabled=true");
+
+        System.out.printf("%d runs per mode%n", runs);
+        System.out.printf("%-24s %10s %10s %10s%n", "mode", "median ms", "min ms", "max ms");
+
+        print("baseline", measure(classPath, List.of(), List.of(), runs));
+        print("lazy + deferred schema", measure(classPath, List.of(), fastStartup, runs));
+        print("+ AOT", measure(classPath, aot, fastStartup, runs));
+        if (cdsArchive != null) {
+            List<String> aotAndCds = new ArrayList<>(aot);
+            aotAndCds.add("-XX:SharedArchiveFile=" + cdsArchive);
+            print("+ AOT + CDS", measure(classPath, aotAndCds, fastStartup, runs));
+        }
+    }
+
+    /**
+     * @return time-to-first-request of every run in milliseconds
+     */
+    private static long[] measure(String classPath, List<String> jvmArgs, List<String> appArgs, int runs)
+            throws Exception {
+        long[] millis = new long[runs];
+        for (int run = 0; run < runs; run++) {
+            millis[run] = launch(classPath, jvmArgs, appArgs);
+        }
+        return millis;
+    }
+
+    private static long launch(String classPath, List<String> jvmArgs, List<String> appArgs) throws Exception {
+        File directory = Files.createTempDirectory("startup-bench").toFile();
+        int port = freePort();
+
+        List<String> command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+        command.addAll(jvmArgs);
+        command.add("-cp");
+        command.add(classPath);
+        command.add("org.example.DemoApplication");
+        command.addAll(appArgs);
+        // Plain HTTP on a local port, so the benchmark needs neither the keystore nor the production address
+        command.add("--server.ssl.enabled=false");
+        command.add("--server.address=127.0.0.1");
+        command.add("--server.port=" + port);
+        command.add("--app.database.path=" + new File(directory, "data.db").getPath());
+
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + "/hello"))
+                .timeout(TIMEOUT)
+                .build();
+
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        try {
+            while (System.nanoTime() - start < TIMEOUT.toNanos()) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException("Application exited with code " + process.exitValue());
+                }
+                try {
+                    if (client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                        return (System.nanoTime() - start) / 1_000_000;
+                    }
+                } catch (ConnectException e) {
+                    // Not listening yet
+                }
+                Thread.sleep(5);
+            }
+            throw new IllegalStateException("Application did not answer within " + TIMEOUT);
+        } finally {
+            process.destroy();
+            process.waitFor();
+            for (File file : directory.listFiles()) {
+                file.delete();
+            }
+            directory.delete();
+        }
+    }
+
+    private static int freePort() throws Exception {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static void print(String mode, long[] millis) {
+        long[] sorted = millis.clone();
+        Arrays.sort(sorted);
+        System.out.printf("%-24s %10d %10d %10d%n", mode, sorted[sorted.length / 2], sorted[0], sorted[sorted.length - 1]);
+    }
+}
@@ -0,0 +1,82 @@
+package org.example.database;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DataBaseShardsTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void shardOfIsStable() throws Exception {
+        try (DataBaseShards first = shards(4); DataBaseShards second = shards(4)) {
+            for (int i = 0; i < 1000; i++) {
+                String user = "user-" + i;
+                int shard = first.shardOf(user);
+                assertTrue(shard >= 0 && shard < 4);
+                assertEquals(shard, first.shardOf(user));
+                // Another instance, e.g. after a restart, routes the user to the same file
+                assertEquals(shard, second.shardOf(user));
+                assertEquals(Math.floorMod(user.hashCode(), 4), shard);
+            }
+            // A negative hash code must still give a valid shard
+            assertTrue("polygenelubricants".hashCode() < 0);
+            assertEquals(Math.floorMod("polygenelubricants".hashCode(), 4), first.shardOf("polygenelubricants"));
+        }
+    }
+
+    @Test
+    void fanOutCommitsOnEveryInvolvedShard() throws Exception {
+        try (DataBaseShards shards = shards(2)) {
+            shards.initialize(DataBaseConfig::initialize, false);
+            String bob = "bob";
+            String carol = userOnOtherShard(shards, bob);
+
+            shards.submit("d", "alice", List.of(bob, carol), "clip", null).get(5, TimeUnit.SECONDS);
+
+            assertEquals(1, shards.forUser(bob).getMetadataByToUser(bob).size());
+            assertEquals(1, shards.forUser(carol).getMetadataByToUser(carol).size());
+            // Each recipient's row lives on their own shard only
+            assertTrue(shards.forUser(carol).getMetadataByToUser(bob).isEmpty());
+            assertTrue(shards.forUser(bob).getMetadataByToUser(carol).isEmpty());
+        }
+    }
+
+    @Test
+    void messageWithoutRecipientsIsRejected() throws Exception {
+        try (DataBaseShards shards = shards(2)) {
+            assertThrows(IllegalArgumentException.class,
+                    () -> shards.submit("d", "alice", List.of(), "clip", null));
+        }
+    }
+
+    // Shards on files in the temporary directory; they are opened only when a test initializes them
+    private DataBaseShards shards(int count) {
+        List<DataBase> dataBases = new ArrayList<>();
+        for (int shard = 0; shard < count; shard++) {
+            dataBases.add(new DataBase(directory.resolve("data-" + shard + ".db").toString()));
+        }
+        return new DataBaseShards(dataBases, 16, 8, 1);
+    }
+
+    private static String userOnOtherShard(DataBaseShards shards, String user) {
+        for (int i = 0; ; i++) {
+            String other = "user-" + i;
+            if (shards.shardOf(other) != shards.shardOf(user)) {
+                assertNotEquals(shards.forUser(user), shards.forUser(other));
+                return other;
+            }
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package org.example.database;
+
+import org.example.audio.AudioMetadata;
+import org.example.utility.Utils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DataBaseTest {
+
+    @TempDir
+    Path directory;
+
+    private String path;
+    private DataBase dataBase;
+
+    @BeforeEach
+    void open() throws SQLException {
+        path = directory.resolve("data.db").toString();
+        dataBase = new DataBase(path);
+        DataBaseConfig.initialize(dataBase);
+    }
+
+    @AfterEach
+    void close() throws SQLException {
+        dataBase.closeConnection();
+    }
+
+    @Test
+    void claimReturnsAndDeletesExactlyThatMessage() throws SQLException {
+        dataBase.insertMessage("d", "alice", "bob", "first");
+        dataBase.insertMessage("d", "carol", "bob", "second");
+        dataBase.insertMessage("d", "carol", "bob", "third");
+
+        DataBase.Message claimed = dataBase.claimNextMessage("bob", "carol");
+        assertNotNull(claimed);
+        assertEquals("carol", claimed.getFromUser());
+        assertEquals("second", text(claimed));
+        assertEquals(0L, count("SELECT COUNT(*) FROM messages WHERE id = ?", claimed.getId()));
+        // The other messages are still waiting
+        assertEquals(List.of("alice", "carol"), dataBase.getToUsersByData("bob"));
+
+        assertEquals("third", text(dataBase.claimNextMessage("bob", "carol")));
+        assertNull(dataBase.claimNextMessage("bob", "carol"));
+        assertThrows(IllegalArgumentException.class, () -> dataBase.claimNextMessage("bob", null));
+    }
+
+    @Test
+    void concurrentClaimsNeverReturnTheSameMessage() throws Exception {
+        int messages = 50;
+        for (int i = 0; i < messages; i++) {
+            dataBase.insertMessage("d", "alice", "bob", "clip " + i);
+        }
+        Callable<List<Integer>> reader = () -> {
+            List<Integer> ids = new ArrayList<>();
+            DataBase.Message message;
+            while ((message = dataBase.claimNextMessage("bob", "alice")) != null) {
+                ids.add(message.getId());
+            }
+            return ids;
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<List<Integer>> first = executor.submit(reader);
+            Future<List<Integer>> second = executor.submit(reader);
+            Set<Integer> ids = new HashSet<>(first.get());
+            for (int id : second.get()) {
+                assertTrue(ids.add(id), "message " + id + " was claimed twice");
+            }
+            assertEquals(messages, ids.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void claimWithoutSenderDrainsEverySenderInArrivalOrder() throws SQLException {
+        dataBase.insertMessage("d", "alice", "bob", "1");
+        dataBase.insertMessage("d", "carol", "bob", "2");
+        dataBase.insertMessage("d", "alice", "dave", "not for bob");
+        dataBase.insertMessage("d", "alice", "bob", "3");
+
+        List<DataBase.Message> first = dataBase.claimMessages("bob", null, 2);
+        List<DataBase.Message> rest = dataBase.claimMessages("bob", null, 10);
+
+        assertEquals(2, first.size());
+        assertEquals("1", text(first.get(0)));
+        assertEquals("2", text(first.get(1)));
+        assertEquals(1, rest.size());
+        assertEquals("3", text(rest.get(0)));
+        assertTrue(first.get(0).getId() < first.get(1).getId());
+        assertTrue(first.get(1).getId() < rest.get(0).getId());
+        assertTrue(dataBase.claimMessages("bob", null, 10).isEmpty());
+        assertEquals(List.of("alice"), dataBase.getToUsersByData("dave"));
+    }
+
+    @Test
+    void sharedPayloadIsDeletedWithItsMetadataAfterTheLastClaim() throws SQLException {
+        AudioMetadata metadata = new AudioMetadata(16000, 1000, -20, new byte[AudioMetadata.PEAK_COUNT]);
+        List<String> recipients = List.of("bob", "carol", "dave");
+        dataBase.insertMessages(List.of(new DataBase.OutgoingMessage("d", "alice", recipients, "clip", metadata)));
+        String hash = Utils.calculateHash("clip");
+        assertEquals(3L, count("SELECT ref_count FROM payloads WHERE hash = ?", hash));
+
+        for (int i = 0; i < recipients.size(); i++) {
+            DataBase.Message claimed = dataBase.claimNextMessage(recipients.get(i), "alice");
+            assertEquals("clip", text(claimed));
+            boolean last = i == recipients.size() - 1;
+            assertEquals(last ? 0L : 1L, count("SELECT COUNT(*) FROM payloads WHERE hash = ?", hash));
+            assertEquals(last ? 0L : 1L, count("SELECT COUNT(*) FROM payload_metadata WHERE hash = ?", hash));
+        }
+    }
+
+    @Test
+    void resentClipRaisesTheReferenceCountInsteadOfStoringItAgain() throws SQLException {
+        dataBase.insertMessage("d", "alice", "bob", "clip");
+        dataBase.insertMessage("d", "alice", "carol", "clip");
+        String hash = Utils.calculateHash("clip");
+
+        assertEquals(1L, count("SELECT COUNT(*) FROM payloads WHERE hash = ?", hash));
+        assertEquals(2L, count("SELECT ref_count FROM payloads WHERE hash = ?", hash));
+        assertEquals(2L, count("SELECT COUNT(*) FROM messages WHERE payload_hash = ?", hash));
+    }
+
+    @Test
+    void legacyMessagesWithInlineDataAreStillReturned() throws SQLException {
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + path);
+             PreparedStatement pstmt = connection.prepareStatement(
+                     "INSERT INTO messages (data, from_user, to_user, bytes_data) VALUES (?, ?, ?, ?);")) {
+            pstmt.setString(1, "d");
+            pstmt.setString(2, "alice");
+            pstmt.setString(3, "bob");
+            pstmt.setString(4, "legacy clip");
+            pstmt.executeUpdate();
+        }
+        dataBase.insertMessage("d", "alice", "bob", "new clip");
+
+        List<DataBase.Message> claimed = dataBase.claimMessages("bob", "alice", 10);
+
+        assertEquals(2, claimed.size());
+        assertEquals("legacy clip", text(claimed.get(0)));
+        assertEquals("new clip", text(claimed.get(1)));
+        assertEquals(0L, count("SELECT COUNT(*) FROM messages WHERE to_user = ?", "bob"));
+    }
+
+    private static String text(DataBase.Message message) {
+        return new String(message.getBytesData(), StandardCharsets.UTF_8);
+    }
+
+    // Reads a single number through a connection of its own, bypassing DataBase
+    private long count(String sql, Object parameter) throws SQLException {
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + path);
+             PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setObject(1, parameter);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package org.example.database;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MessageWriterTest {
+
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private final RecordingDataBase dataBase = new RecordingDataBase();
+
+    @Test
+    void batchClosesWhenItIsFull() throws Exception {
+        // The delay is far longer than the test, so only the batch size can close a batch
+        try (MessageWriter writer = new MessageWriter(dataBase, 64, 4, 60_000)) {
+            List<CompletableFuture<Void>> futures = submit(writer, 8);
+            for (CompletableFuture<Void> future : futures) {
+                future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            }
+            assertEquals(List.of(4, 4), dataBase.batchSizes);
+        }
+    }
+
+    @Test
+    void batchClosesAfterTheMaximumDelay() throws Exception {
+        try (MessageWriter writer = new MessageWriter(dataBase, 64, 100, 50)) {
+            long start = System.nanoTime();
+            List<CompletableFuture<Void>> futures = submit(writer, 3);
+            for (CompletableFuture<Void> future : futures) {
+                future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            }
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50), "batch closed before the delay");
+            assertEquals(3, dataBase.committed());
+        }
+    }
+
+    @Test
+    void futureCompletesOnlyAfterTheCommit() throws Exception {
+        dataBase.gate = new CountDownLatch(1);
+        try (MessageWriter writer = new MessageWriter(dataBase, 64, 1, 0)) {
+            CompletableFuture<Void> future = writer.submit("d", "alice", List.of("bob"), "clip", null);
+            Thread.sleep(100);
+            assertFalse(future.isDone());
+
+            dataBase.gate.countDown();
+            future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            assertEquals(1, dataBase.committed());
+        }
+    }
+
+    @Test
+    void failingBatchFailsOnlyItselfAndTheWriterKeepsRunning() throws Exception {
+        try (MessageWriter writer = new MessageWriter(dataBase, 64, 1, 0)) {
+            CompletableFuture<Void> failing = writer.submit(RecordingDataBase.FAIL, "alice", List.of("bob"), "clip", null);
+            ExecutionException e = assertThrows(ExecutionException.class,
+                    () -> failing.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof SQLException);
+
+            CompletableFuture<Void> next = writer.submit("d", "alice", List.of("bob"), "clip", null);
+            next.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            assertEquals(1, dataBase.committed());
+        }
+    }
+
+    @Test
+    void closeCommitsWhatIsQueuedAndRejectsLaterMessages() throws Exception {
+        dataBase.gate = new CountDownLatch(1);
+        MessageWriter writer = new MessageWriter(dataBase, 64, 1, 0);
+        // The first message blocks in the database, the rest wait in the queue
+        List<CompletableFuture<Void>> futures = submit(writer, 5);
+        Thread closer = new Thread(writer::close);
+        closer.start();
+        Thread.sleep(100);
+        assertTrue(closer.isAlive(), "close() returned before the queue was committed");
+
+        dataBase.gate.countDown();
+        closer.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+        assertFalse(closer.isAlive());
+        for (CompletableFuture<Void> future : futures) {
+            assertTrue(future.isDone() && !future.isCompletedExceptionally());
+        }
+        assertEquals(5, dataBase.committed());
+        assertThrows(IllegalStateException.class, () -> writer.submit("d", "alice", List.of("bob"), "clip", null));
+    }
+
+    private static List<CompletableFuture<Void>> submit(MessageWriter writer, int count) throws InterruptedException {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            futures.add(writer.submit("d", "alice", List.of("bob"), "clip " + i, null));
+        }
+        return futures;
+    }
+
+    /**
+     * Records the batches it is given instead of writing them.
+     * A batch containing a message with the data {@link #FAIL} fails, and while the gate is closed
+     * every insert waits for it.
+     */
+    private static class RecordingDataBase extends DataBase {
+        static final String FAIL = "fail";
+
+        final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        volatile CountDownLatch gate;
+
+        RecordingDataBase() {
+            super("unused.db");
+        }
+
+        @Override
+        public synchronized void insertMessages(List<OutgoingMessage> messages) throws SQLException {
+            try {
+                if (gate != null && !gate.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    throw new SQLException("Gate was never opened");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException(e);
+            }
+            for (OutgoingMessage message : messages) {
+                if (FAIL.equals(message.getData())) {
+                    throw new SQLException("Simulated failure");
+                }
+            }
+            batchSizes.add(messages.size());
+        }
+
+        int committed() {
+            return batchSizes.stream().mapToInt(Integer::intValue).sum();
+        }
+    }
+}
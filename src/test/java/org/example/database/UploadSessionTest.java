@@ -0,0 +1,129 @@
+package org.example.database;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class UploadSessionTest {
+
+    private static final long NO_LIMIT = Long.MAX_VALUE;
+
+    @TempDir
+    Path directory;
+
+    private String path;
+    private DataBase dataBase;
+
+    @BeforeEach
+    void open() throws SQLException {
+        path = directory.resolve("data.db").toString();
+        dataBase = new DataBase(path);
+        DataBaseConfig.initialize(dataBase);
+        dataBase.createUploadSession("s", "alice", List.of("bob", "carol"), "audio/webm");
+    }
+
+    @AfterEach
+    void close() throws SQLException {
+        dataBase.closeConnection();
+    }
+
+    @Test
+    void chunksAreAppendedInOrder() throws SQLException {
+        for (int seq = 0; seq < 3; seq++) {
+            assertEquals(DataBase.ChunkResult.APPENDED, dataBase.appendUploadChunk("s", seq, new byte[] {1}, NO_LIMIT));
+        }
+        assertEquals(3, dataBase.getUploadSession("s").getNextSeq());
+        assertEquals(3L, count("SELECT COUNT(*) FROM upload_chunks WHERE session_id = ?", "s"));
+    }
+
+    @Test
+    void chunkOutOfSequenceIsRejected() throws SQLException {
+        dataBase.appendUploadChunk("s", 0, new byte[] {1}, NO_LIMIT);
+
+        // A gap, a chunk that was already stored, and a session that does not exist
+        assertEquals(DataBase.ChunkResult.OUT_OF_SEQUENCE, dataBase.appendUploadChunk("s", 2, new byte[] {2}, NO_LIMIT));
+        assertEquals(DataBase.ChunkResult.OUT_OF_SEQUENCE, dataBase.appendUploadChunk("s", 0, new byte[] {3}, NO_LIMIT));
+        assertEquals(DataBase.ChunkResult.OUT_OF_SEQUENCE, dataBase.appendUploadChunk("x", 0, new byte[] {4}, NO_LIMIT));
+        assertEquals(1, dataBase.getUploadSession("s").getNextSeq());
+        assertEquals(1L, count("SELECT COUNT(*) FROM upload_chunks WHERE session_id = ?", "s"));
+    }
+
+    @Test
+    void chunkPastTheSizeLimitFillsTheSessionWithoutAdvancingIt() throws SQLException {
+        assertEquals(DataBase.ChunkResult.APPENDED, dataBase.appendUploadChunk("s", 0, new byte[6], 10));
+        assertEquals(DataBase.ChunkResult.SESSION_FULL, dataBase.appendUploadChunk("s", 1, new byte[6], 10));
+        assertEquals(1, dataBase.getUploadSession("s").getNextSeq());
+        assertEquals(1L, count("SELECT COUNT(*) FROM upload_chunks WHERE session_id = ?", "s"));
+
+        // A chunk that still fits is accepted up to the limit exactly
+        assertEquals(DataBase.ChunkResult.APPENDED, dataBase.appendUploadChunk("s", 1, new byte[4], 10));
+        assertEquals(2, dataBase.getUploadSession("s").getNextSeq());
+    }
+
+    @Test
+    void claimAssemblesTheChunksAndDeletesTheSessionOnce() throws SQLException {
+        dataBase.appendUploadChunk("s", 0, new byte[] {1, 2}, NO_LIMIT);
+        dataBase.appendUploadChunk("s", 1, new byte[] {3}, NO_LIMIT);
+        dataBase.appendUploadChunk("s", 2, new byte[] {4, 5, 6}, NO_LIMIT);
+
+        // Another user's claim neither gets nor closes the session
+        assertNull(dataBase.claimUploadSession("s", "mallory"));
+        assertNotNull(dataBase.getUploadSession("s"));
+
+        DataBase.CompletedUpload upload = dataBase.claimUploadSession("s", "alice");
+        assertNotNull(upload);
+        assertArrayEquals(new byte[] {1, 2, 3, 4, 5, 6}, upload.getAudioData());
+        assertEquals(List.of("bob", "carol"), upload.getSession().getRecipients());
+        assertEquals("audio/webm", upload.getSession().getContentType());
+        assertNull(dataBase.getUploadSession("s"));
+        assertEquals(0L, count("SELECT COUNT(*) FROM upload_chunks WHERE session_id = ?", "s"));
+
+        assertNull(dataBase.claimUploadSession("s", "alice"));
+    }
+
+    @Test
+    void sweepKeepsSessionsThatAreStillReceivingChunks() throws SQLException {
+        dataBase.createUploadSession("idle", "alice", List.of("bob"), null);
+        dataBase.appendUploadChunk("idle", 0, new byte[] {1}, NO_LIMIT);
+        update("UPDATE upload_sessions SET created_at = 0, last_chunk_at = 0;");
+        // Opened long ago, but a chunk arrived just now
+        dataBase.appendUploadChunk("s", 0, new byte[] {1}, NO_LIMIT);
+
+        assertEquals(1, dataBase.deleteUploadSessionsInactiveSince(System.currentTimeMillis() - 60_000));
+        assertNotNull(dataBase.getUploadSession("s"));
+        assertNull(dataBase.getUploadSession("idle"));
+        assertEquals(0L, count("SELECT COUNT(*) FROM upload_chunks WHERE session_id = ?", "idle"));
+    }
+
+    // Reads a single number through a connection of its own, bypassing DataBase
+    private long count(String sql, Object parameter) throws SQLException {
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + path);
+             PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setObject(1, parameter);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    private void update(String sql) throws SQLException {
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + path);
+             PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.executeUpdate();
+        }
+    }
+}